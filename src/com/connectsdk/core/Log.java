@@ -3,27 +3,75 @@ package com.connectsdk.core;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Logging facade on top of SLF4J. Messages are only formatted if their level is enabled. In hot paths prefer the
+ * parameterized variants, which take SLF4J style "{}" placeholders, over concatenating the message, and guard
+ * arguments that are expensive to compute with {@link #isDebugEnabled()}.
+ */
 public final class Log {
 
 	private static final Logger l = LoggerFactory.getLogger(Log.class);
 
+	public static boolean isDebugEnabled() {
+		return l.isDebugEnabled();
+	}
+
+	public static boolean isWarnEnabled() {
+		return l.isWarnEnabled();
+	}
+
 	public static int d(java.lang.String tag, java.lang.String msg) {
-		l.debug(String.format("%s - %s", tag, msg));
+		l.debug("{} - {}", tag, msg);
+		return 0;
+	}
+
+	public static int d(java.lang.String tag, java.lang.String format, java.lang.Object arg) {
+		if (l.isDebugEnabled()) {
+			l.debug(tag + " - " + format, arg);
+		}
+		return 0;
+	}
+
+	public static int d(java.lang.String tag, java.lang.String format, java.lang.Object arg1, java.lang.Object arg2) {
+		if (l.isDebugEnabled()) {
+			l.debug(tag + " - " + format, arg1, arg2);
+		}
+		return 0;
+	}
+
+	public static int d(java.lang.String tag, java.lang.String format, java.lang.Object... args) {
+		if (l.isDebugEnabled()) {
+			l.debug(tag + " - " + format, args);
+		}
 		return 0;
 	}
 
 	public static int w(java.lang.String tag, java.lang.String msg) {
-		l.warn(String.format("%s - %s", tag, msg));
+		l.warn("{} - {}", tag, msg);
+		return 0;
+	}
+
+	public static int w(java.lang.String tag, java.lang.String format, java.lang.Object arg) {
+		if (l.isWarnEnabled()) {
+			l.warn(tag + " - " + format, arg);
+		}
 		return 0;
 	}
-	
+
+	public static int w(java.lang.String tag, java.lang.String format, java.lang.Object arg1, java.lang.Object arg2) {
+		if (l.isWarnEnabled()) {
+			l.warn(tag + " - " + format, arg1, arg2);
+		}
+		return 0;
+	}
+
 	public static int e(java.lang.String tag, java.lang.String msg) {
-		l.error(String.format("%s - %s",tag, msg));
+		l.error("{} - {}", tag, msg);
 		return 0;
 	}
 
 	public static int e(java.lang.String tag, java.lang.String msg, java.lang.Throwable tr) {
-		l.error(String.format("%s - %s",tag, msg), tr);
+		l.error(tag + " - " + msg, tr);
 		return 0;
 	}
 
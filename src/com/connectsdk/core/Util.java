@@ -24,6 +24,10 @@ package com.connectsdk.core;
 
 import java.util.Date;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.http.conn.util.InetAddressUtils;
@@ -38,6 +42,7 @@ public final class Util {
     static public final String T = "Connect SDK";
 
     static private ExecutorService executor;
+    static private ScheduledExecutorService scheduler;
 
     /**
      * Configure Util on component start.
@@ -48,8 +53,13 @@ public final class Util {
         executor = e;
     }
 
-    public static void uninit() {
+    public static synchronized void uninit() {
         executor = null;
+
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
     }
 
     public static void runOnUI(Runnable runnable) {
@@ -65,6 +75,39 @@ public final class Util {
         runInBackground(runnable, false);
     }
 
+    /**
+     * Runs the runnable in the background once the delay has passed. If the executor given to init() cannot
+     * schedule, all delayed work shares a single timer thread which only hands the runnable over to the executor.
+     */
+    public static ScheduledFuture<?> runInBackground(final Runnable runnable, long delay, TimeUnit unit) {
+        if (executor instanceof ScheduledExecutorService) {
+            return ((ScheduledExecutorService) executor).schedule(runnable, delay, unit);
+        }
+
+        return getScheduler().schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                runInBackground(runnable);
+            }
+        }, delay, unit);
+    }
+
+    private static synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, T + " scheduler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return scheduler;
+    }
+
     
 
     public static <T> void postSuccess(final ResponseListener<T> listener, final T object) {
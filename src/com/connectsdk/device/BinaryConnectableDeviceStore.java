@@ -0,0 +1,121 @@
+package com.connectsdk.device;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.connectsdk.core.Context;
+import com.connectsdk.core.Log;
+import com.connectsdk.core.Util;
+
+/**
+ * ConnectableDeviceStore which keeps its data in a compact binary snapshot instead of the JSON file used by
+ * DefaultConnectableDeviceStore. The snapshot is memory-mapped on load and service entries are only decoded when they
+ * are used, which keeps start-up cheap for large stores.
+ *
+ * If no snapshot exists yet, an existing JSON store is loaded and converted. The JSON file itself is left in place.
+ * A snapshot that can't be read is moved aside to a ".corrupt" file and the store starts empty, the JSON file may be
+ * older than the snapshot and is not used then.
+ */
+public class BinaryConnectableDeviceStore extends DefaultConnectableDeviceStore {
+    // @cond INTERNAL
+
+    static final String SNAPSHOT_SUFFIX = ".bin";
+    static final String CORRUPT_SUFFIX = ".corrupt";
+
+    private File snapshotFile;
+    // false if an unreadable snapshot could not be moved aside, it must not be overwritten then
+    private boolean snapshotWritable = true;
+
+    // @endcond
+
+    public BinaryConnectableDeviceStore(Context context) {
+        super(context.getDataDir() + "/" + FILENAME);
+
+        snapshotFile = new File(fileFullPath + SNAPSHOT_SUFFIX);
+
+        load();
+    }
+
+    /**
+     * Converts a device store file written by DefaultConnectableDeviceStore into a binary snapshot.
+     *
+     * @param jsonPath path of the JSON device store
+     * @param snapshotPath path of the binary snapshot to write
+     * @throws IOException if the snapshot could not be written
+     */
+    public static void convert(String jsonPath, String snapshotPath) throws IOException {
+        DefaultConnectableDeviceStore source = new DefaultConnectableDeviceStore(jsonPath);
+        source.load();
+
+        File temp = new File(snapshotPath + TEMP_SUFFIX);
+
+        File snapshot = new File(snapshotPath);
+
+        BinaryDeviceStoreFormat.write(temp, source);
+        replaceFile(temp, snapshot);
+        syncDirectory(snapshot.getAbsoluteFile().getParentFile());
+    }
+
+    // @cond INTERNAL
+    @Override
+    protected void load() {
+        if (snapshotFile.exists()) {
+            try {
+                if (BinaryDeviceStoreFormat.read(snapshotFile, this))
+                    return;
+
+                Log.w(Util.T, "Unsupported device store snapshot {}", snapshotFile);
+            } catch (IOException e) {
+                Log.e(Util.T, "Failed to read device store snapshot", e);
+            }
+            clearStoredDevices();
+            setSnapshotAside();
+            return;
+        }
+
+        super.load();
+
+        if (new File(fileFullPath).exists())
+            store();
+    }
+
+    private void setSnapshotAside() {
+        File corrupt = new File(snapshotFile.getPath() + CORRUPT_SUFFIX);
+
+        try {
+            replaceFile(snapshotFile, corrupt);
+            Log.e(Util.T, "Moved unreadable device store snapshot to " + corrupt + ", starting with an empty store");
+        } catch (IOException e) {
+            Log.e(Util.T, "Failed to move unreadable device store snapshot aside, not writing the device store", e);
+            snapshotWritable = false;
+        }
+    }
+
+    @Override
+    protected synchronized boolean store() {
+        if (!snapshotWritable)
+            return false;
+
+        updated = Util.getTime();
+
+        File dir = snapshotFile.getParentFile();
+
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.e(Util.T, "Failed to create folders structure to device store " + dir.toString());
+            return false;
+        }
+
+        File temp = new File(snapshotFile.getPath() + TEMP_SUFFIX);
+
+        try {
+            BinaryDeviceStoreFormat.write(temp, this);
+            replaceFile(temp, snapshotFile);
+            syncDirectory(dir);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+    // @endcond
+}
@@ -0,0 +1,155 @@
+package com.connectsdk.device;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes the binary snapshot used by BinaryConnectableDeviceStore.
+ *
+ * Layout (big endian):
+ * - header: magic "CSDS", format version, store version, created, updated
+ * - device records, each prefixed by its length in bytes
+ * - string table holding every device property and service UUID once, records refer to it by index (-1 for null)
+ * - footer: offset of the string table
+ *
+ * Records are read from a memory-mapped buffer; service entries keep pointing into the mapping until they are used.
+ */
+final class BinaryDeviceStoreFormat {
+    static final int MAGIC = 0x43534453;
+    static final int FORMAT_VERSION = 1;
+
+    private static final int HEADER_SIZE = 28;
+    private static final int FOOTER_SIZE = 8;
+
+    private BinaryDeviceStoreFormat() {
+    }
+
+    static final class StringTable {
+        private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+        private final List<String> strings = new ArrayList<String>();
+
+        int indexOf(String value) {
+            if (value == null)
+                return -1;
+
+            Integer index = indexes.get(value);
+
+            if (index == null) {
+                index = strings.size();
+                strings.add(value);
+                indexes.put(value, index);
+            }
+            return index;
+        }
+    }
+
+    static void write(File file, DefaultConnectableDeviceStore store) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), DefaultConnectableDeviceStore.BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(store.version);
+            out.writeLong(store.created);
+            out.writeLong(store.updated);
+
+            StringTable strings = new StringTable();
+            ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+            DataOutputStream record = new DataOutputStream(recordBytes);
+
+            for (StoredDeviceRecord storedDevice : store.storedDevices.values()) {
+                recordBytes.reset();
+                storedDevice.writeBinary(record, strings);
+
+                out.writeInt(recordBytes.size());
+                recordBytes.writeTo(out);
+            }
+
+            long stringTableOffset = out.size();
+
+            out.writeInt(strings.strings.size());
+            for (String value : strings.strings) {
+                byte[] data = value.getBytes(StandardCharsets.UTF_8);
+
+                out.writeInt(data.length);
+                out.write(data);
+            }
+
+            out.writeLong(stringTableOffset);
+
+            // the data must be on disk before the snapshot is renamed over the previous one
+            out.flush();
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Loads all records of the snapshot into the store.
+     *
+     * @return false if the file is not a snapshot of a supported version
+     */
+    static boolean read(File file, DefaultConnectableDeviceStore store) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.remaining() < HEADER_SIZE + FOOTER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION)
+                return false;
+
+            int version = buffer.getInt();
+            long created = buffer.getLong();
+            long updated = buffer.getLong();
+
+            long stringTableOffset = buffer.getLong(buffer.limit() - FOOTER_SIZE);
+
+            if (stringTableOffset < HEADER_SIZE || stringTableOffset > buffer.limit() - FOOTER_SIZE)
+                throw new IOException("Invalid string table offset in device store snapshot " + file);
+
+            ByteBuffer table = buffer.duplicate();
+            table.position((int) stringTableOffset);
+
+            String[] strings = new String[table.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                int length = table.getInt();
+
+                ByteBuffer data = table.slice();
+                data.limit(length);
+                table.position(table.position() + length);
+
+                strings[i] = StandardCharsets.UTF_8.decode(data).toString();
+            }
+
+            buffer.limit((int) stringTableOffset);
+
+            while (buffer.hasRemaining()) {
+                int length = buffer.getInt();
+
+                ByteBuffer record = buffer.slice();
+                record.limit(length);
+                buffer.position(buffer.position() + length);
+
+                store.putStoredDevice(StoredDeviceRecord.readBinary(record, strings));
+            }
+
+            store.version = version;
+            store.created = created;
+            store.updated = updated;
+
+            return true;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Corrupt device store snapshot " + file, e);
+        }
+    }
+}
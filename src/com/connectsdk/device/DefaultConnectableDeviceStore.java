@@ -23,28 +23,27 @@ package com.connectsdk.device;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.Writer;
-import java.nio.charset.Charset;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.io.FileOutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 import com.connectsdk.core.Context;
 import com.connectsdk.core.Log;
 import com.connectsdk.core.Util;
-import com.connectsdk.service.DeviceService;
 import com.connectsdk.service.config.ServiceConfig;
 import com.connectsdk.service.config.ServiceDescription;
 
@@ -64,6 +63,9 @@ public class DefaultConnectableDeviceStore implements ConnectableDeviceStore {
 
     static final String DIRPATH = "/android/data/connect_sdk/";
     static final String FILENAME = "StoredDevices";
+    static final String TEMP_SUFFIX = ".tmp";
+
+    static final int BUFFER_SIZE = 8192;
 
     static final String IP_ADDRESS = "ipAddress";
     static final String FRIENDLY_NAME = "friendlyName";
@@ -96,16 +98,27 @@ public class DefaultConnectableDeviceStore implements ConnectableDeviceStore {
 
 
     // @cond INTERNAL
-    private String fileFullPath;
+    String fileFullPath;
 
-    private Map<String, JSONObject> storedDevices = new ConcurrentHashMap<String, JSONObject>();
+    Map<String, StoredDeviceRecord> storedDevices = new ConcurrentHashMap<String, StoredDeviceRecord>();
     private Map<String, ConnectableDevice> activeDevices = new ConcurrentHashMap<String, ConnectableDevice>();
 
+    /** Maps the UUID of every stored service to the id of the device it belongs to. */
+    private Map<String, String> serviceIndex = new ConcurrentHashMap<String, String>();
+
     public DefaultConnectableDeviceStore(Context context) { 
-        fileFullPath = context.getDataDir() + "/" + FILENAME;
+        this(context.getDataDir() + "/" + FILENAME);
         
         load();
     }
+
+    /**
+     * Creates a store backed by the given file without loading it. Subclasses must call load() once they
+     * are fully initialized.
+     */
+    protected DefaultConnectableDeviceStore(String fileFullPath) {
+        this.fileFullPath = fileFullPath;
+    }
     // @endcond
 
     @Override
@@ -116,14 +129,14 @@ public class DefaultConnectableDeviceStore implements ConnectableDeviceStore {
         if (!activeDevices.containsKey(device.getId()))
             activeDevices.put(device.getId(), device);
 
-        JSONObject storedDevice = getStoredDevice(device.getId());
+        StoredDeviceRecord storedDevice = getStoredDevice(device.getId());
 
         if (storedDevice != null) {
             updateDevice(device);
         } else {
-            storedDevices.put(device.getId(), device.toJSONObject());
+            putStoredDevice(StoredDeviceRecord.fromDevice(device));
 
-            store();
+            onDeviceStored(device.getId());
         }
     }
 
@@ -133,9 +146,9 @@ public class DefaultConnectableDeviceStore implements ConnectableDeviceStore {
             return;
 
         activeDevices.remove(device.getId());
-        storedDevices.remove(device.getId());
+        removeStoredDevice(device.getId());
 
-        store();
+        onDeviceRemoved(device.getId());
     }
 
     @Override
@@ -143,55 +156,34 @@ public class DefaultConnectableDeviceStore implements ConnectableDeviceStore {
         if (device == null || device.getServices().size() == 0)
             return;
 
-        JSONObject storedDevice = getStoredDevice(device.getId());
+        StoredDeviceRecord storedDevice = getStoredDevice(device.getId());
 
         if (storedDevice == null)
             return;
 
-        try {
-            storedDevice.put(ConnectableDevice.KEY_LAST_IP, device.getLastKnownIPAddress());
-            storedDevice.put(ConnectableDevice.KEY_LAST_SEEN, device.getLastSeenOnWifi());
-            storedDevice.put(ConnectableDevice.KEY_LAST_CONNECTED, device.getLastConnected());
-            storedDevice.put(ConnectableDevice.KEY_LAST_DETECTED, device.getLastDetection());
-
-            JSONObject services = storedDevice.optJSONObject(ConnectableDevice.KEY_SERVICES);
-
-            if (services == null)
-                services = new JSONObject();
+        storedDevice.update(device);
 
-            for (DeviceService service : device.getServices()) {
-                JSONObject serviceInfo = service.toJSONObject();
-
-                if (serviceInfo != null)
-                    services.put(service.getServiceDescription().getUUID(), serviceInfo);
-            }
+        putStoredDevice(storedDevice);
+        activeDevices.put(device.getId(), device);
 
-            storedDevice.put(ConnectableDevice.KEY_SERVICES, services);
-
-            storedDevices.put(device.getId(), storedDevice);
-            activeDevices.put(device.getId(), device);
-
-            store();
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
+        onDeviceStored(device.getId());
     }
 
     @Override
     public void removeAll() {
         activeDevices.clear();
-        storedDevices.clear();
+        clearStoredDevices();
 
-        store();
+        onStoreCleared();
     }
 
     @Override
     public JSONObject getStoredDevices() {
         JSONObject ret = new JSONObject();
 
-        for (java.util.Map.Entry<String, JSONObject> entry: storedDevices.entrySet()) {
+        for (java.util.Map.Entry<String, StoredDeviceRecord> entry: storedDevices.entrySet()) {
             try {
-                ret.put(entry.getKey(), entry.getValue());
+                ret.put(entry.getKey(), entry.getValue().toJSONObject());
             } catch (JSONException e) {
                 e.printStackTrace();
             }
@@ -207,10 +199,10 @@ public class DefaultConnectableDeviceStore implements ConnectableDeviceStore {
         ConnectableDevice foundDevice = getActiveDevice(uuid);
 
         if (foundDevice == null) {
-            JSONObject foundDeviceInfo = getStoredDevice(uuid);
+            StoredDeviceRecord foundDeviceInfo = getStoredDevice(uuid);
 
             if (foundDeviceInfo != null)
-                foundDevice = new ConnectableDevice(foundDeviceInfo);
+                foundDevice = foundDeviceInfo.toDevice();
         }
 
         return foundDevice;
@@ -220,27 +212,26 @@ public class DefaultConnectableDeviceStore implements ConnectableDeviceStore {
         ConnectableDevice foundDevice = activeDevices.get(uuid);
 
         if (foundDevice == null) {
-            for (ConnectableDevice device : activeDevices.values()) {
-                for (DeviceService service : device.getServices()) {
-                    if (uuid.equals(service.getServiceDescription().getUUID())) {
-                        return device;
-                    }
-                }
+            String deviceId = serviceIndex.get(uuid);
+
+            if (deviceId != null) {
+                ConnectableDevice device = activeDevices.get(deviceId);
+
+                if (device != null && device.getServiceWithUUID(uuid) != null)
+                    return device;
             }
         }
         return foundDevice;
     }
 
-    private JSONObject getStoredDevice(String uuid) {
-        JSONObject foundDevice = storedDevices.get(uuid);
+    private StoredDeviceRecord getStoredDevice(String uuid) {
+        StoredDeviceRecord foundDevice = storedDevices.get(uuid);
 
         if (foundDevice == null) {
-            for (JSONObject device: storedDevices.values()) {
-                JSONObject services = device.optJSONObject(ConnectableDevice.KEY_SERVICES);
+            String deviceId = serviceIndex.get(uuid);
 
-                if (services != null && services.has(uuid))
-                    return device;
-            }
+            if (deviceId != null)
+                return storedDevices.get(deviceId);
         }
         return foundDevice;
     }
@@ -255,27 +246,60 @@ public class DefaultConnectableDeviceStore implements ConnectableDeviceStore {
             return null;
         }
 
-        JSONObject device = getStoredDevice(uuid);
+        StoredDeviceRecord device = getStoredDevice(uuid);
         if (device != null) {
-            JSONObject services = device.optJSONObject(ConnectableDevice.KEY_SERVICES);
-            if (services != null) {
-                JSONObject service = services.optJSONObject(uuid);
-                if (service != null) {
-                    JSONObject serviceConfigInfo = service.optJSONObject(DeviceService.KEY_CONFIG);
-                    if (serviceConfigInfo != null) {
-                        return ServiceConfig.getConfig(serviceConfigInfo);
-                    }
-                }
-            }
+            return device.getServiceConfig(uuid);
         }
 
         return null;
     }
 
     // @cond INTERNAL
-    private void load() {
-        String line;
+    void putStoredDevice(StoredDeviceRecord storedDevice) {
+        storedDevices.put(storedDevice.id, storedDevice);
+
+        for (String uuid : storedDevice.getServiceUUIDs())
+            serviceIndex.put(uuid, storedDevice.id);
+    }
+
+    void removeStoredDevice(String id) {
+        StoredDeviceRecord storedDevice = storedDevices.remove(id);
+
+        if (storedDevice == null)
+            return;
 
+        // another device may have claimed the service since, so only drop our own entries
+        for (String uuid : storedDevice.getServiceUUIDs())
+            serviceIndex.remove(uuid, id);
+    }
+
+    void clearStoredDevices() {
+        storedDevices.clear();
+        serviceIndex.clear();
+    }
+
+    /**
+     * Called after a device record has been added or changed. The default implementation rewrites the whole
+     * file.
+     */
+    protected void onDeviceStored(String id) {
+        store();
+    }
+
+    /** Called after a device record has been removed. */
+    protected void onDeviceRemoved(String id) {
+        store();
+    }
+
+    /** Called after all device records have been removed. */
+    protected void onStoreCleared() {
+        store();
+    }
+
+    /**
+     * Reads the store one device record at a time, so the file is never held in memory as a whole.
+     */
+    protected void load() {
         File file = new File(fileFullPath);
 
         if (!file.exists()) {
@@ -283,59 +307,161 @@ public class DefaultConnectableDeviceStore implements ConnectableDeviceStore {
             created = Util.getTime();
             updated = Util.getTime();
         } else {
-            try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))){
-                
-                StringBuilder sb = new StringBuilder();
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                    Reader in = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), BUFFER_SIZE), BUFFER_SIZE)) {
+                JSONTokener tokener = new JSONTokener(in);
+                JSONObject header = new JSONObject();
 
-                while ((line = in.readLine()) != null) {
-                    sb.append(line);
-                }
+                if (tokener.nextClean() != '{')
+                    throw tokener.syntaxError("A JSONObject text must begin with '{'");
+
+                if (tokener.nextClean() != '}') {
+                    tokener.back();
+
+                    while (true) {
+                        String key = tokener.nextValue().toString();
+
+                        if (tokener.nextClean() != ':')
+                            throw tokener.syntaxError("Expected a ':' after a key");
 
-                JSONObject data = new JSONObject(sb.toString());
-                JSONArray deviceArray = data.optJSONArray(KEY_DEVICES);
-                if (deviceArray != null) {
-                    for (int i = 0; i < deviceArray.length(); i++) {
-                        JSONObject device = deviceArray.getJSONObject(i);
-                        storedDevices.put(device.getString(ConnectableDevice.KEY_ID), device);
+                        if (KEY_DEVICES.equals(key))
+                            loadDevices(tokener);
+                        else
+                            header.put(key, tokener.nextValue());
+
+                        if (!nextElement(tokener, '}'))
+                            break;
                     }
                 }
 
-                version = data.optInt(KEY_VERSION, CURRENT_VERSION);
-                created = data.optLong(KEY_CREATED, 0);
-                updated = data.optLong(KEY_UPDATED, 0);
+                version = header.optInt(KEY_VERSION, CURRENT_VERSION);
+                created = header.optLong(KEY_CREATED, 0);
+                updated = header.optLong(KEY_UPDATED, 0);
             } catch (IOException|JSONException e) {
                 e.printStackTrace();
             }             
         }
     }
 
-    private synchronized void store() {
+    private void loadDevices(JSONTokener tokener) throws JSONException {
+        if (tokener.nextClean() != '[')
+            throw tokener.syntaxError("A JSONArray text must start with '['");
+
+        if (tokener.nextClean() == ']')
+            return;
+        tokener.back();
+
+        do {
+            Object device = tokener.nextValue();
+
+            if (device instanceof JSONObject)
+                putStoredDevice(StoredDeviceRecord.fromJSONObject((JSONObject) device));
+        } while (nextElement(tokener, ']'));
+    }
+
+    /**
+     * Consumes the separator after an object member or array element.
+     *
+     * @return true if another element follows, false if the closing character was reached
+     */
+    private static boolean nextElement(JSONTokener tokener, char close) throws JSONException {
+        char c = tokener.nextClean();
+
+        if (c == ',') {
+            if (tokener.nextClean() == close)
+                return false;
+            tokener.back();
+            return true;
+        } else if (c == close) {
+            return false;
+        }
+        throw tokener.syntaxError("Expected a ',' or '" + close + "'");
+    }
+
+    /**
+     * Writes the full store to a temporary file and moves it over the previous one, so an interrupted write
+     * never leaves a truncated file behind. The temporary file is forced to disk before the move and the move
+     * before returning, so after a power loss the file holds either the old or the new store. Device records are
+     * serialized one at a time straight into the file.
+     *
+     * @return true if the store was written
+     */
+    protected synchronized boolean store() {
         updated = Util.getTime();
 
         File output = new File(fileFullPath);
+        File dir = output.getParentFile();
 
-        if (!output.exists() && !output.getParentFile().mkdirs()) {
-            Log.e(Util.T, "Failed to create folders structure to device store "+output.getParentFile().toString());
-            return;
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.e(Util.T, "Failed to create folders structure to device store "+dir.toString());
+            return false;
         } 
 
-        JSONObject deviceStore = new JSONObject();
+        File temp = new File(fileFullPath + TEMP_SUFFIX);
+
         try {
-            deviceStore.put(KEY_VERSION, version);
-            deviceStore.put(KEY_CREATED, created);
-            deviceStore.put(KEY_UPDATED, updated);
-            JSONArray deviceArray = new JSONArray(storedDevices.values());
-            deviceStore.put(KEY_DEVICES, deviceArray);
-            
-                        
-            try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8))) {    
-                out.write(deviceStore.toString());
+            try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                    Writer out = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE), BUFFER_SIZE)) {
+                out.write('{');
+                out.write(JSONObject.quote(KEY_VERSION));
+                out.write(':');
+                out.write(Integer.toString(version));
+                out.write(',');
+                out.write(JSONObject.quote(KEY_CREATED));
+                out.write(':');
+                out.write(Long.toString(created));
+                out.write(',');
+                out.write(JSONObject.quote(KEY_UPDATED));
+                out.write(':');
+                out.write(Long.toString(updated));
+                out.write(',');
+                out.write(JSONObject.quote(KEY_DEVICES));
+                out.write(":[");
+
+                boolean first = true;
+                for (StoredDeviceRecord storedDevice : storedDevices.values()) {
+                    if (!first)
+                        out.write(',');
+                    first = false;
+
+                    storedDevice.write(out);
+                }
+
+                out.write("]}");
+
+                // the data must be on disk before the rename can be
+                out.flush();
+                channel.force(true);
             } 
-        } catch (JSONException|IOException e) {
+
+            replaceFile(temp, output);
+            syncDirectory(dir);
+            return true;
+        } catch (IOException e) {
             e.printStackTrace();
         }        
+        return false;
     }
 
+    static void replaceFile(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Forces the entries of a directory to disk, so a rename in it survives a power loss. Not every platform can
+     * open a directory, there the rename is left to the file system.
+     */
+    static void syncDirectory(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // not supported, e.g. on Windows
+        }
+    }
 
     // @endcond
 }
@@ -0,0 +1,255 @@
+package com.connectsdk.device;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.connectsdk.core.Context;
+import com.connectsdk.core.Log;
+import com.connectsdk.core.Util;
+
+/**
+ * ConnectableDeviceStore which appends every change as a record to a journal next to the regular device store
+ * file instead of rewriting the whole file. On load the journal is replayed on top of the last snapshot; once the
+ * journal grows past a threshold it is folded into a new snapshot in the background.
+ *
+ * Each journal record is framed by its length and a CRC32 checksum, so a record that was only partially written
+ * when the process died is detected and discarded on the next load. Records are forced to disk as they are
+ * appended, so they also survive a power loss.
+ */
+public class JournaledConnectableDeviceStore extends DefaultConnectableDeviceStore {
+    // @cond INTERNAL
+
+    static final String JOURNAL_SUFFIX = ".journal";
+
+    /** Default journal size (in bytes) after which the journal is compacted into a snapshot. */
+    public static final long DEFAULT_COMPACTION_THRESHOLD = 256 * 1024;
+
+    static final String KEY_OP = "op";
+    static final String KEY_DEVICE = "device";
+
+    static final String OP_PUT = "put";
+    static final String OP_REMOVE = "remove";
+    static final String OP_CLEAR = "clear";
+
+    private static final int HEADER_SIZE = 8;
+
+    private File journalFile;
+    private FileChannel journal;
+    private long journalSize;
+    private long compactionThreshold;
+    private boolean compactionScheduled;
+
+    // @endcond
+
+    public JournaledConnectableDeviceStore(Context context) {
+        this(context, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * @param context the context used to locate the data directory
+     * @param compactionThreshold journal size in bytes after which it is compacted into a snapshot
+     */
+    public JournaledConnectableDeviceStore(Context context, long compactionThreshold) {
+        super(context.getDataDir() + "/" + FILENAME);
+
+        this.compactionThreshold = compactionThreshold;
+        this.journalFile = new File(fileFullPath + JOURNAL_SUFFIX);
+
+        load();
+    }
+
+    // @cond INTERNAL
+    @Override
+    protected void onDeviceStored(String id) {
+        StoredDeviceRecord storedDevice = storedDevices.get(id);
+
+        if (storedDevice == null)
+            return;
+
+        StringWriter record = new StringWriter();
+        try {
+            record.write('{');
+            record.write(JSONObject.quote(KEY_OP));
+            record.write(':');
+            record.write(JSONObject.quote(OP_PUT));
+            record.write(',');
+            record.write(JSONObject.quote(KEY_DEVICE));
+            record.write(':');
+            storedDevice.write(record);
+            record.write('}');
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        append(record.toString());
+    }
+
+    @Override
+    protected void onDeviceRemoved(String id) {
+        JSONObject record = new JSONObject();
+        try {
+            record.put(KEY_OP, OP_REMOVE);
+            record.put(ConnectableDevice.KEY_ID, id);
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return;
+        }
+        append(record.toString());
+    }
+
+    @Override
+    protected synchronized void onStoreCleared() {
+        JSONObject record = new JSONObject();
+        try {
+            record.put(KEY_OP, OP_CLEAR);
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return;
+        }
+        append(record.toString());
+
+        // the snapshot is empty now, so fold the journal right away
+        compact();
+    }
+
+    @Override
+    protected synchronized void load() {
+        super.load();
+
+        journalSize = 0;
+
+        if (!journalFile.exists()) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            CRC32 crc = new CRC32();
+
+            while (buffer.remaining() >= HEADER_SIZE) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+
+                if (length < 0 || length > buffer.remaining()) {
+                    break;
+                }
+
+                byte[] data = new byte[length];
+                buffer.get(data);
+
+                crc.reset();
+                crc.update(data, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                replay(new JSONObject(new String(data, StandardCharsets.UTF_8)));
+                journalSize = buffer.position();
+            }
+
+            if (journalSize < size) {
+                Log.w(Util.T, "Discarding {} bytes of incomplete device store journal", size - journalSize);
+            }
+        } catch (IOException | JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void replay(JSONObject record) throws JSONException {
+        String op = record.getString(KEY_OP);
+
+        if (OP_PUT.equals(op)) {
+            putStoredDevice(StoredDeviceRecord.fromJSONObject(record.getJSONObject(KEY_DEVICE)));
+        } else if (OP_REMOVE.equals(op)) {
+            removeStoredDevice(record.getString(ConnectableDevice.KEY_ID));
+        } else if (OP_CLEAR.equals(op)) {
+            clearStoredDevices();
+        }
+    }
+
+    private synchronized void append(String record) {
+        updated = Util.getTime();
+
+        byte[] data = record.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + data.length);
+        frame.putInt(data.length);
+        frame.putInt((int) crc.getValue());
+        frame.put(data);
+        frame.flip();
+
+        try {
+            FileChannel channel = openJournal();
+            long position = journalSize;
+            while (frame.hasRemaining()) {
+                position += channel.write(frame, position);
+            }
+            channel.force(false);
+            journalSize = position;
+        } catch (IOException e) {
+            Log.e(Util.T, "Failed to append to device store journal, writing full snapshot", e);
+            compact();
+            return;
+        }
+
+        if (journalSize > compactionThreshold && !compactionScheduled) {
+            compactionScheduled = true;
+
+            Util.runInBackground(new Runnable() {
+
+                @Override
+                public void run() {
+                    compact();
+                }
+            });
+        }
+    }
+
+    private FileChannel openJournal() throws IOException {
+        if (journal == null || !journal.isOpen()) {
+            File dir = journalFile.getParentFile();
+            if (!dir.exists() && !dir.mkdirs()) {
+                throw new IOException("Failed to create folders structure to device store " + dir);
+            }
+
+            journal = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            // drop a torn record left behind by a crash, it was skipped during load
+            journal.truncate(journalSize);
+        }
+        return journal;
+    }
+
+    /**
+     * Writes a full snapshot and empties the journal. The snapshot is on disk and has replaced the old file before
+     * the journal is truncated, and replaying journal records on top of a newer snapshot yields the same state, so
+     * a crash or power loss at any point keeps the store intact.
+     */
+    synchronized void compact() {
+        compactionScheduled = false;
+
+        if (!store()) {
+            return;
+        }
+
+        try {
+            openJournal().truncate(0);
+            journalSize = 0;
+        } catch (IOException e) {
+            Log.e(Util.T, "Failed to truncate device store journal", e);
+        }
+    }
+    // @endcond
+}
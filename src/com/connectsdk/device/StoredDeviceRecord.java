@@ -0,0 +1,272 @@
+package com.connectsdk.device;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.connectsdk.service.DeviceService;
+import com.connectsdk.service.config.ServiceConfig;
+
+/**
+ * Typed record of a remembered device as kept by DefaultConnectableDeviceStore. Device properties are held as plain
+ * fields; service entries stay serialized until their ServiceConfig is needed.
+ */
+final class StoredDeviceRecord {
+    final String id;
+
+    private String lastKnownIPAddress;
+    private String friendlyName;
+    private String modelName;
+    private String modelNumber;
+    private String lastSeenOnWifi;
+    private long lastConnected;
+    private long lastDetection;
+
+    private final Map<String, StoredServiceRecord> services = new HashMap<String, StoredServiceRecord>();
+
+    StoredDeviceRecord(String id) {
+        this.id = id;
+    }
+
+    static StoredDeviceRecord fromDevice(ConnectableDevice device) {
+        StoredDeviceRecord record = new StoredDeviceRecord(device.getId());
+
+        record.lastKnownIPAddress = device.getIpAddress();
+        record.friendlyName = device.getFriendlyName();
+        record.modelName = device.getModelName();
+        record.modelNumber = device.getModelNumber();
+        record.lastSeenOnWifi = device.getLastSeenOnWifi();
+        record.lastConnected = device.getLastConnected();
+        record.lastDetection = device.getLastDetection();
+
+        for (DeviceService service : device.getServices()) {
+            record.services.put(service.getServiceConfig().getServiceUUID(), new StoredServiceRecord(service, service.toJSONObject()));
+        }
+
+        return record;
+    }
+
+    static StoredDeviceRecord fromJSONObject(JSONObject json) throws JSONException {
+        StoredDeviceRecord record = new StoredDeviceRecord(json.getString(ConnectableDevice.KEY_ID));
+
+        record.lastKnownIPAddress = json.optString(ConnectableDevice.KEY_LAST_IP, null);
+        record.friendlyName = json.optString(ConnectableDevice.KEY_FRIENDLY, null);
+        record.modelName = json.optString(ConnectableDevice.KEY_MODEL_NAME, null);
+        record.modelNumber = json.optString(ConnectableDevice.KEY_MODEL_NUMBER, null);
+        record.lastSeenOnWifi = json.optString(ConnectableDevice.KEY_LAST_SEEN, null);
+        record.lastConnected = json.optLong(ConnectableDevice.KEY_LAST_CONNECTED, 0);
+        record.lastDetection = json.optLong(ConnectableDevice.KEY_LAST_DETECTED, 0);
+
+        JSONObject services = json.optJSONObject(ConnectableDevice.KEY_SERVICES);
+
+        if (services != null) {
+            Iterator<?> uuids = services.keys();
+
+            while (uuids.hasNext()) {
+                String uuid = (String) uuids.next();
+                JSONObject service = services.optJSONObject(uuid);
+
+                if (service != null)
+                    record.services.put(uuid, new StoredServiceRecord(service.toString()));
+            }
+        }
+
+        return record;
+    }
+
+    /**
+     * Reads a record written by {@link #writeBinary(DataOutput, BinaryDeviceStoreFormat.StringTable)}. Service
+     * entries keep referencing the buffer and are only decoded when needed.
+     */
+    static StoredDeviceRecord readBinary(ByteBuffer in, String[] strings) {
+        StoredDeviceRecord record = new StoredDeviceRecord(readString(in, strings));
+
+        record.lastKnownIPAddress = readString(in, strings);
+        record.friendlyName = readString(in, strings);
+        record.modelName = readString(in, strings);
+        record.modelNumber = readString(in, strings);
+        record.lastSeenOnWifi = readString(in, strings);
+        record.lastConnected = in.getLong();
+        record.lastDetection = in.getLong();
+
+        int serviceCount = in.getInt();
+
+        for (int i = 0; i < serviceCount; i++) {
+            String uuid = readString(in, strings);
+            int length = in.getInt();
+
+            ByteBuffer json = in.slice();
+            json.limit(length);
+            in.position(in.position() + length);
+
+            record.services.put(uuid, new StoredServiceRecord(json));
+        }
+
+        return record;
+    }
+
+    private static String readString(ByteBuffer in, String[] strings) {
+        int index = in.getInt();
+
+        return index < 0 ? null : strings[index];
+    }
+
+    /**
+     * Merges the current state of the device into this record. Services of the device replace stored services with
+     * the same UUID, other stored services are kept.
+     */
+    synchronized void update(ConnectableDevice device) {
+        lastKnownIPAddress = device.getLastKnownIPAddress();
+        lastSeenOnWifi = device.getLastSeenOnWifi();
+        lastConnected = device.getLastConnected();
+        lastDetection = device.getLastDetection();
+
+        for (DeviceService service : device.getServices()) {
+            JSONObject serviceInfo = service.toJSONObject();
+
+            if (serviceInfo != null)
+                services.put(service.getServiceDescription().getUUID(), new StoredServiceRecord(service, serviceInfo));
+        }
+    }
+
+    synchronized Set<String> getServiceUUIDs() {
+        return new HashSet<String>(services.keySet());
+    }
+
+    ServiceConfig getServiceConfig(String uuid) {
+        StoredServiceRecord service;
+
+        synchronized (this) {
+            service = services.get(uuid);
+        }
+
+        return service != null ? service.getServiceConfig() : null;
+    }
+
+    synchronized ConnectableDevice toDevice() {
+        ConnectableDevice device = new ConnectableDevice();
+
+        device.setId(id);
+        device.setLastKnownIPAddress(lastKnownIPAddress);
+        device.setFriendlyName(friendlyName);
+        device.setModelName(modelName);
+        device.setModelNumber(modelNumber);
+        device.setLastSeenOnWifi(lastSeenOnWifi);
+        device.setLastConnected(lastConnected);
+        device.setLastDetection(lastDetection);
+
+        return device;
+    }
+
+    synchronized JSONObject toJSONObject() throws JSONException {
+        JSONObject deviceObject = new JSONObject();
+
+        deviceObject.put(ConnectableDevice.KEY_ID, id);
+        deviceObject.put(ConnectableDevice.KEY_LAST_IP, lastKnownIPAddress);
+        deviceObject.put(ConnectableDevice.KEY_FRIENDLY, friendlyName);
+        deviceObject.put(ConnectableDevice.KEY_MODEL_NAME, modelName);
+        deviceObject.put(ConnectableDevice.KEY_MODEL_NUMBER, modelNumber);
+        deviceObject.put(ConnectableDevice.KEY_LAST_SEEN, lastSeenOnWifi);
+        deviceObject.put(ConnectableDevice.KEY_LAST_CONNECTED, lastConnected);
+        deviceObject.put(ConnectableDevice.KEY_LAST_DETECTED, lastDetection);
+
+        JSONObject jsonServices = new JSONObject();
+        for (Map.Entry<String, StoredServiceRecord> entry : services.entrySet()) {
+            jsonServices.put(entry.getKey(), entry.getValue().toJSONObject());
+        }
+        deviceObject.put(ConnectableDevice.KEY_SERVICES, jsonServices);
+
+        return deviceObject;
+    }
+
+    /**
+     * Writes the record in the same form as {@link #toJSONObject()} without building the JSON tree. Service entries
+     * are copied from their serialized text.
+     */
+    synchronized void write(Writer out) throws IOException {
+        out.write('{');
+        out.write(JSONObject.quote(ConnectableDevice.KEY_ID));
+        out.write(':');
+        out.write(JSONObject.quote(id));
+
+        writeString(out, ConnectableDevice.KEY_LAST_IP, lastKnownIPAddress);
+        writeString(out, ConnectableDevice.KEY_FRIENDLY, friendlyName);
+        writeString(out, ConnectableDevice.KEY_MODEL_NAME, modelName);
+        writeString(out, ConnectableDevice.KEY_MODEL_NUMBER, modelNumber);
+        writeString(out, ConnectableDevice.KEY_LAST_SEEN, lastSeenOnWifi);
+        writeLong(out, ConnectableDevice.KEY_LAST_CONNECTED, lastConnected);
+        writeLong(out, ConnectableDevice.KEY_LAST_DETECTED, lastDetection);
+
+        out.write(',');
+        out.write(JSONObject.quote(ConnectableDevice.KEY_SERVICES));
+        out.write(":{");
+
+        boolean first = true;
+        for (Map.Entry<String, StoredServiceRecord> entry : services.entrySet()) {
+            if (!first)
+                out.write(',');
+            first = false;
+
+            out.write(JSONObject.quote(entry.getKey()));
+            out.write(':');
+            out.write(entry.getValue().toJSONString());
+        }
+
+        out.write("}}");
+    }
+
+    synchronized void writeBinary(DataOutput out, BinaryDeviceStoreFormat.StringTable strings) throws IOException {
+        out.writeInt(strings.indexOf(id));
+        out.writeInt(strings.indexOf(lastKnownIPAddress));
+        out.writeInt(strings.indexOf(friendlyName));
+        out.writeInt(strings.indexOf(modelName));
+        out.writeInt(strings.indexOf(modelNumber));
+        out.writeInt(strings.indexOf(lastSeenOnWifi));
+        out.writeLong(lastConnected);
+        out.writeLong(lastDetection);
+
+        out.writeInt(services.size());
+
+        for (Map.Entry<String, StoredServiceRecord> entry : services.entrySet()) {
+            ByteBuffer json = entry.getValue().toUTF8();
+
+            out.writeInt(strings.indexOf(entry.getKey()));
+            out.writeInt(json.remaining());
+
+            if (json.hasArray()) {
+                out.write(json.array(), json.arrayOffset() + json.position(), json.remaining());
+            } else {
+                byte[] data = new byte[json.remaining()];
+                json.get(data);
+                out.write(data);
+            }
+        }
+    }
+
+    // like JSONObject.put, null values are left out
+    private static void writeString(Writer out, String key, String value) throws IOException {
+        if (value == null)
+            return;
+
+        out.write(',');
+        out.write(JSONObject.quote(key));
+        out.write(':');
+        out.write(JSONObject.quote(value));
+    }
+
+    private static void writeLong(Writer out, String key, long value) throws IOException {
+        out.write(',');
+        out.write(JSONObject.quote(key));
+        out.write(':');
+        out.write(Long.toString(value));
+    }
+}
@@ -0,0 +1,68 @@
+package com.connectsdk.device;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.connectsdk.service.DeviceService;
+import com.connectsdk.service.config.ServiceConfig;
+
+/**
+ * Service entry of a {@link StoredDeviceRecord}. The entry is kept as its serialized JSON text, the ServiceConfig is
+ * only decoded when it is first requested and cached afterwards. Entries read from a binary snapshot keep the encoded
+ * bytes until the text is needed.
+ */
+final class StoredServiceRecord {
+    private String json;
+    private ByteBuffer encoded;
+    private ServiceConfig serviceConfig;
+
+    StoredServiceRecord(String json) {
+        this.json = json;
+    }
+
+    StoredServiceRecord(ByteBuffer encoded) {
+        this.encoded = encoded;
+    }
+
+    StoredServiceRecord(DeviceService service, JSONObject serviceInfo) {
+        this.json = serviceInfo.toString();
+        this.serviceConfig = service.getServiceConfig();
+    }
+
+    synchronized ServiceConfig getServiceConfig() {
+        if (serviceConfig == null) {
+            try {
+                JSONObject serviceConfigInfo = new JSONObject(toJSONString()).optJSONObject(DeviceService.KEY_CONFIG);
+
+                if (serviceConfigInfo != null)
+                    serviceConfig = ServiceConfig.getConfig(serviceConfigInfo);
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+        }
+        return serviceConfig;
+    }
+
+    JSONObject toJSONObject() throws JSONException {
+        return new JSONObject(toJSONString());
+    }
+
+    synchronized String toJSONString() {
+        if (json == null) {
+            json = StandardCharsets.UTF_8.decode(encoded.duplicate()).toString();
+            encoded = null;
+        }
+        return json;
+    }
+
+    /** @return the UTF-8 encoded JSON text, without decoding it if it has not been decoded yet */
+    synchronized ByteBuffer toUTF8() {
+        if (encoded != null)
+            return encoded.duplicate();
+
+        return ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -785,8 +785,8 @@ public class DiscoveryManager implements ConnectableDeviceListener, DiscoveryPro
 
     @Override
     public void onServiceAdded(DiscoveryProvider provider, ServiceDescription serviceDescription) {
-        Log.d(Util.T, "Service added: " + serviceDescription.getFriendlyName() + " ("
-                + serviceDescription.getServiceID() + ")");
+        Log.d(Util.T, "Service added: {} ({})", serviceDescription.getFriendlyName(),
+                serviceDescription.getServiceID());
 
         boolean deviceIsNew = !allDevices.containsKey(serviceDescription.getIpAddress());
         ConnectableDevice device = null;
@@ -842,7 +842,7 @@ public class DiscoveryManager implements ConnectableDeviceListener, DiscoveryPro
             return;
         }
 
-        Log.d(Util.T, "onServiceRemoved: friendlyName: " + serviceDescription.getFriendlyName());
+        Log.d(Util.T, "onServiceRemoved: friendlyName: {}", serviceDescription.getFriendlyName());
 
         ConnectableDevice device = allDevices.get(serviceDescription.getIpAddress());
 
@@ -866,8 +866,8 @@ public class DiscoveryManager implements ConnectableDeviceListener, DiscoveryPro
 
     @SuppressWarnings("unchecked")
     public void addServiceDescriptionToDevice(ServiceDescription desc, ConnectableDevice device) {
-        Log.d(Util.T, "Adding service " + desc.getServiceID() + " to device with address " + device.getIpAddress()
-                + " and id " + device.getId());
+        Log.d(Util.T, "Adding service {} to device with address {} and id {}", desc.getServiceID(),
+                device.getIpAddress(), device.getId());
 
         Class<? extends DeviceService> deviceServiceClass = deviceClasses.get(desc.getServiceID());
 
@@ -20,17 +20,45 @@
 
 package com.connectsdk.etc.helper;
 
-import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.Random;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
+import com.connectsdk.core.Util;
+
+/**
+ * Watches whether a device is still reachable. Probes of all devices run on the shared scheduler of Util instead of
+ * a thread per device, and their first probes are spread over the probe interval. The interval adapts: it grows while
+ * the device keeps answering and shrinks right after a failed probe, which has to be confirmed before the device is
+ * reported as lost.
+ *
+ * How a device is probed is up to its {@link ReachabilityProbe}. The default pings the address, services should pass
+ * a probe for their own port or URL where they know it.
+ */
 public class DeviceServiceReachability {
-    private static final int TIMEOUT = 10000;
+    /** Interval (in milliseconds) between probes of a device that just started to be watched. */
+    public static final long DEFAULT_INTERVAL = 10000;
+    /** Shortest interval (in milliseconds), used to confirm a failed probe. */
+    public static final long MIN_INTERVAL = 1000;
+    /** Longest interval (in milliseconds), reached while the device stays reachable. */
+    public static final long MAX_INTERVAL = 30000;
+    /** Number of failed probes in a row after which the device is considered lost. */
+    public static final int FAILURES_TO_LOSE = 2;
+
+    private static final Random random = new Random();
+
     private InetAddress ipAddress;
-    private Thread testThread;
+    private ReachabilityProbe probe = new InetAddressProbe();
 
     private DeviceServiceReachabilityListener listener;
 
+    private ScheduledFuture<?> nextProbe;
+    private boolean running;
+    private long interval = DEFAULT_INTERVAL;
+    private int failures;
+
     public DeviceServiceReachability() { }
 
     public DeviceServiceReachability(InetAddress ipAddress) {
@@ -42,10 +70,25 @@ public class DeviceServiceReachability {
         this.listener = listener;
     }
 
+    public DeviceServiceReachability(InetAddress ipAddress, ReachabilityProbe probe, DeviceServiceReachabilityListener listener) {
+        this.ipAddress = ipAddress;
+        this.probe = probe;
+        this.listener = listener;
+    }
+
     public static DeviceServiceReachability getReachability(InetAddress ipAddress, DeviceServiceReachabilityListener listener) {
         return new DeviceServiceReachability(ipAddress, listener);
     }
 
+    public static DeviceServiceReachability getReachability(final String ipAddress, ReachabilityProbe probe, DeviceServiceReachabilityListener listener) {
+        DeviceServiceReachability reachability = getReachability(ipAddress, listener);
+
+        if (reachability != null)
+            reachability.setProbe(probe);
+
+        return reachability;
+    }
+
     public static DeviceServiceReachability getReachability(final String ipAddress, DeviceServiceReachabilityListener listener) {
         InetAddress addr;
         try {
@@ -64,8 +107,16 @@ public class DeviceServiceReachability {
         this.ipAddress = ipAddress;
     }
 
-    public boolean isRunning() {
-        return testThread != null && testThread.isAlive();
+    public ReachabilityProbe getProbe() {
+        return probe;
+    }
+
+    public void setProbe(ReachabilityProbe probe) {
+        this.probe = probe;
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
     }
 
     public DeviceServiceReachabilityListener getListener() {
@@ -76,20 +127,32 @@ public class DeviceServiceReachability {
         this.listener = listener;
     }
 
-    public void start() {
-        if (isRunning())
+    public synchronized void start() {
+        if (running)
             return;
 
-        testThread = new Thread(testReachability);
-        testThread.start();
+        running = true;
+        interval = DEFAULT_INTERVAL;
+        failures = 0;
+
+        // stagger the first probe so that devices found together are not probed in lockstep
+        schedule((long) (random.nextDouble() * interval));
     }
 
-    public void stop() {
-        if (!isRunning())
+    public synchronized void stop() {
+        if (!running)
             return;
 
-        testThread.interrupt();
-        testThread = null;
+        running = false;
+
+        if (nextProbe != null) {
+            nextProbe.cancel(false);
+            nextProbe = null;
+        }
+    }
+
+    private void schedule(long delay) {
+        nextProbe = Util.runInBackground(testReachability, delay, TimeUnit.MILLISECONDS);
     }
 
     private void unreachable() {
@@ -99,19 +162,45 @@ public class DeviceServiceReachability {
             listener.onLoseReachability(this);
     }
 
+    private void onProbeResult(boolean reachable) {
+        synchronized (this) {
+            if (!running)
+                return;
+
+            if (reachable) {
+                failures = 0;
+                interval = Math.min(interval * 3 / 2, MAX_INTERVAL);
+            } else {
+                failures++;
+                interval = MIN_INTERVAL;
+            }
+
+            if (failures < FAILURES_TO_LOSE) {
+                schedule(interval);
+                return;
+            }
+        }
+
+        unreachable();
+    }
+
     private Runnable testReachability = new Runnable() {
 
         @Override
         public void run() {
-            try {
-                while (true) {
-                    if (!ipAddress.isReachable(TIMEOUT))
-                        unreachable();
-                    Thread.sleep(TIMEOUT);
+            synchronized (DeviceServiceReachability.this) {
+                if (!running)
+                    return;
+                nextProbe = null;
+            }
+
+            probe.probe(ipAddress, new ReachabilityProbe.ProbeListener() {
+
+                @Override
+                public void onResult(boolean reachable) {
+                    onProbeResult(reachable);
                 }
-            } catch (IOException e) {
-                unreachable();
-            } catch (InterruptedException e) { }
+            });
         }
     };
 
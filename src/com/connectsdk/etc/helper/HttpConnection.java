@@ -26,13 +26,14 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
 import java.net.ProtocolException;
 import java.net.Socket;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * HTTP connection implementation based on this article
@@ -155,13 +156,18 @@ public abstract class HttpConnection {
 
     private static class CustomConnectionClient extends HttpConnection {
 
+        // milliseconds, a renderer that doesn't answer must not hold up a thread for good
+        private static final int CONNECT_TIMEOUT = 5000;
+        private static final int READ_TIMEOUT = 10000;
+
         private final URI uri;
         private Method method;
         private String payload;
         private Map<String, String> headers = new LinkedHashMap<String, String>();
         private int code;
         private String response;
-        private Map<String, String> responseHeaders = new HashMap<String, String>();
+        // header names are case insensitive
+        private Map<String, String> responseHeaders = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
 
         private CustomConnectionClient(URI uri) {
             this.uri = uri;
@@ -185,7 +191,17 @@ public abstract class HttpConnection {
         @Override
         public void execute() throws IOException {
             int port = uri.getPort() > 0 ? uri.getPort() : 80;
-            Socket socket = new Socket(uri.getHost(), port);
+            Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(uri.getHost(), port), CONNECT_TIMEOUT);
+                socket.setSoTimeout(READ_TIMEOUT);
+                execute(socket, port);
+            } finally {
+                socket.close();
+            }
+        }
+
+        private void execute(Socket socket, int port) throws IOException {
             PrintWriter writer =
                     new PrintWriter(new OutputStreamWriter(socket.getOutputStream(),StandardCharsets.UTF_8), true);
             BufferedReader reader =
@@ -238,12 +254,35 @@ public abstract class HttpConnection {
                 }
             }
 
-            while (null != (line = reader.readLine())) {
-                sb.append(line);
-                sb.append("\r\n");
+            // renderers that keep the connection open send a length, otherwise the body ends with the connection;
+            // the length counts bytes, which matches the characters of the (empty or ASCII) subscription responses
+            int length = parseContentLength(responseHeaders.get("Content-Length"));
+            if (length >= 0) {
+                char[] buffer = new char[Math.min(length, 8192)];
+                int read;
+                while (sb.length() < length
+                        && (read = reader.read(buffer, 0, Math.min(buffer.length, length - sb.length()))) > 0) {
+                    sb.append(buffer, 0, read);
+                }
+            } else {
+                while (null != (line = reader.readLine())) {
+                    sb.append(line);
+                    sb.append("\r\n");
+                }
             }
             response = sb.toString();
-            socket.close();
+        }
+
+        private static int parseContentLength(String value) {
+            if (value == null) {
+                return -1;
+            }
+
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                return -1;
+            }
         }
 
         @Override
@@ -0,0 +1,51 @@
+package com.connectsdk.etc.helper;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Probe that sends an HTTP HEAD request to a URL of the service, e.g. its control or application URL. Any HTTP
+ * response counts as reachable, including error statuses: the point is that the HTTP server of the service answers.
+ * Runs without blocking on the shared probe selector.
+ */
+public class HttpHeadProbe implements ReachabilityProbe {
+    public static final int DEFAULT_TIMEOUT = 2000;
+
+    private final URL url;
+    private final int timeout;
+    private final byte[] request;
+
+    public HttpHeadProbe(URL url) {
+        this(url, DEFAULT_TIMEOUT);
+    }
+
+    public HttpHeadProbe(URL url, int timeout) {
+        this.url = url;
+        this.timeout = timeout;
+
+        String path = url.getFile().isEmpty() ? "/" : url.getFile();
+        String host = url.getPort() != -1 ? url.getHost() + ":" + url.getPort() : url.getHost();
+
+        this.request = ("HEAD " + path + " HTTP/1.1\r\nHost: " + host + "\r\nConnection: close\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public URL getURL() {
+        return url;
+    }
+
+    /**
+     * Probes the address given by the caller, not the host of the URL, so that the probe follows IP address changes
+     * of the device.
+     */
+    @Override
+    public void probe(InetAddress address, ProbeListener listener) {
+        int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+
+        ProbeSelector.submit(new ProbeSelector.Probe(new InetSocketAddress(address, port), ByteBuffer.wrap(request),
+                timeout, listener));
+    }
+}
@@ -0,0 +1,43 @@
+package com.connectsdk.etc.helper;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+import com.connectsdk.core.Util;
+
+/**
+ * Probe based on InetAddress.isReachable. Without the privileges to send ICMP it falls back to a TCP connection to
+ * the echo port, which many devices refuse, so prefer {@link TCPConnectProbe} or {@link HttpHeadProbe} where the
+ * service port is known. The check blocks a background thread for up to the timeout.
+ */
+public class InetAddressProbe implements ReachabilityProbe {
+    public static final int DEFAULT_TIMEOUT = 10000;
+
+    private final int timeout;
+
+    public InetAddressProbe() {
+        this(DEFAULT_TIMEOUT);
+    }
+
+    public InetAddressProbe(int timeout) {
+        this.timeout = timeout;
+    }
+
+    @Override
+    public void probe(final InetAddress address, final ProbeListener listener) {
+        Util.runInBackground(new Runnable() {
+
+            @Override
+            public void run() {
+                boolean reachable;
+
+                try {
+                    reachable = address.isReachable(timeout);
+                } catch (IOException e) {
+                    reachable = false;
+                }
+                listener.onResult(reachable);
+            }
+        });
+    }
+}
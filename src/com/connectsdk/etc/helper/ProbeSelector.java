@@ -0,0 +1,274 @@
+package com.connectsdk.etc.helper;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.connectsdk.core.Log;
+import com.connectsdk.core.Util;
+
+/**
+ * Runs the socket based reachability probes of all devices on one selector thread. A probe connects without
+ * blocking, optionally writes a request and waits for the first line of the response; it fails when its timeout
+ * passes first.
+ */
+final class ProbeSelector implements Runnable {
+
+    static final class Probe {
+        final InetSocketAddress address;
+        final ByteBuffer request;
+        final long deadline;
+        final ReachabilityProbe.ProbeListener listener;
+
+        ByteBuffer response;
+        SocketChannel channel;
+
+        Probe(InetSocketAddress address, ByteBuffer request, int timeout, ReachabilityProbe.ProbeListener listener) {
+            this.address = address;
+            this.request = request;
+            this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            this.listener = listener;
+        }
+    }
+
+    private static final int RESPONSE_SIZE = 64;
+
+    private static ProbeSelector instance;
+
+    private final Selector selector;
+    private final Queue<Probe> pending = new ConcurrentLinkedQueue<Probe>();
+
+    private ProbeSelector(Selector selector) {
+        this.selector = selector;
+    }
+
+    static void submit(Probe probe) {
+        ProbeSelector probeSelector;
+
+        // added under the lock, so a selector that stops afterwards still sees the probe and fails it
+        synchronized (ProbeSelector.class) {
+            try {
+                probeSelector = getInstance();
+            } catch (IOException e) {
+                Log.e(Util.T, "Failed to open reachability probe selector", e);
+                complete(probe, false);
+                return;
+            }
+
+            probeSelector.pending.add(probe);
+        }
+        probeSelector.selector.wakeup();
+    }
+
+    private static synchronized ProbeSelector getInstance() throws IOException {
+        if (instance == null) {
+            instance = new ProbeSelector(Selector.open());
+
+            Thread thread = new Thread(instance, Util.T + " reachability");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return instance;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                selector.select(getSelectTimeout());
+
+                Probe probe;
+                while ((probe = pending.poll()) != null) {
+                    try {
+                        start(probe);
+                    } catch (RuntimeException e) {
+                        Log.e(Util.T, "Reachability probe failed", e);
+                        finish(probe, null, false);
+                    }
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    try {
+                        handle(key);
+                    } catch (RuntimeException e) {
+                        Log.e(Util.T, "Reachability probe failed", e);
+
+                        if (key.isValid()) {
+                            finish((Probe) key.attachment(), key, false);
+                        }
+                    }
+                }
+
+                expire();
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.e(Util.T, "Reachability probe selector failed", e);
+        } finally {
+            stop();
+        }
+    }
+
+    /**
+     * Fails the probes left on this selector. The next submitted probe starts a new selector.
+     */
+    private void stop() {
+        synchronized (ProbeSelector.class) {
+            if (instance == this) {
+                instance = null;
+            }
+        }
+
+        if (selector.isOpen()) {
+            for (SelectionKey key : selector.keys()) {
+                // cancelled keys belong to finished probes
+                if (key.isValid()) {
+                    finish((Probe) key.attachment(), key, false);
+                }
+            }
+
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // nothing left to clean up
+            }
+        }
+
+        Probe probe;
+        while ((probe = pending.poll()) != null) {
+            complete(probe, false);
+        }
+    }
+
+    private long getSelectTimeout() {
+        long now = System.nanoTime();
+        long timeout = 0;
+
+        for (SelectionKey key : selector.keys()) {
+            Probe probe = (Probe) key.attachment();
+            long remaining = Math.max(1, TimeUnit.NANOSECONDS.toMillis(probe.deadline - now));
+
+            if (timeout == 0 || remaining < timeout) {
+                timeout = remaining;
+            }
+        }
+        return timeout;
+    }
+
+    private void start(Probe probe) {
+        try {
+            probe.channel = SocketChannel.open();
+            probe.channel.configureBlocking(false);
+
+            if (probe.channel.connect(probe.address)) {
+                connected(probe, probe.channel.register(selector, 0, probe));
+            } else {
+                probe.channel.register(selector, SelectionKey.OP_CONNECT, probe);
+            }
+        } catch (IOException e) {
+            finish(probe, null, false);
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        Probe probe = (Probe) key.attachment();
+
+        if (!key.isValid()) {
+            return;
+        }
+
+        try {
+            if (key.isConnectable()) {
+                if (probe.channel.finishConnect()) {
+                    connected(probe, key);
+                }
+            } else if (key.isWritable()) {
+                probe.channel.write(probe.request);
+
+                if (!probe.request.hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            } else if (key.isReadable()) {
+                int read = probe.channel.read(probe.response);
+
+                if (hasStatusLine(probe.response)) {
+                    finish(probe, key, true);
+                } else if (read < 0 || !probe.response.hasRemaining()) {
+                    finish(probe, key, false);
+                }
+            }
+        } catch (IOException e) {
+            finish(probe, key, false);
+        }
+    }
+
+    private void connected(Probe probe, SelectionKey key) {
+        if (probe.request == null) {
+            finish(probe, key, true);
+            return;
+        }
+
+        probe.response = ByteBuffer.allocate(RESPONSE_SIZE);
+        key.interestOps(SelectionKey.OP_WRITE);
+    }
+
+    private static boolean hasStatusLine(ByteBuffer response) {
+        int length = response.position();
+
+        if (length < 5) {
+            return false;
+        }
+
+        return response.get(0) == 'H' && response.get(1) == 'T' && response.get(2) == 'T' && response.get(3) == 'P'
+                && response.get(4) == '/';
+    }
+
+    private void expire() {
+        long now = System.nanoTime();
+
+        for (SelectionKey key : selector.keys()) {
+            Probe probe = (Probe) key.attachment();
+
+            if (key.isValid() && now - probe.deadline >= 0) {
+                finish(probe, key, false);
+            }
+        }
+    }
+
+    private void finish(Probe probe, SelectionKey key, boolean reachable) {
+        if (key != null) {
+            key.cancel();
+        }
+
+        try {
+            if (probe.channel != null) {
+                probe.channel.close();
+            }
+        } catch (IOException e) {
+            // nothing left to clean up
+        }
+
+        complete(probe, reachable);
+    }
+
+    private static void complete(final Probe probe, final boolean reachable) {
+        // keep listeners off the selector thread
+        Util.runInBackground(new Runnable() {
+
+            @Override
+            public void run() {
+                probe.listener.onResult(reachable);
+            }
+        });
+    }
+}
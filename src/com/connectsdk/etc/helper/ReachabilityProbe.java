@@ -0,0 +1,18 @@
+package com.connectsdk.etc.helper;
+
+import java.net.InetAddress;
+
+/**
+ * Strategy used by {@link DeviceServiceReachability} to check whether a device still answers.
+ */
+public interface ReachabilityProbe {
+
+    /**
+     * Starts probing the address. Must not block; the listener is called exactly once, on any thread.
+     */
+    public void probe(InetAddress address, ProbeListener listener);
+
+    public interface ProbeListener {
+        public void onResult(boolean reachable);
+    }
+}
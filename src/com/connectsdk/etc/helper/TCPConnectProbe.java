@@ -0,0 +1,29 @@
+package com.connectsdk.etc.helper;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+/**
+ * Probe that opens a TCP connection to the service port. The connection is made without blocking on the shared
+ * probe selector and closed as soon as it is established.
+ */
+public class TCPConnectProbe implements ReachabilityProbe {
+    public static final int DEFAULT_TIMEOUT = 2000;
+
+    private final int port;
+    private final int timeout;
+
+    public TCPConnectProbe(int port) {
+        this(port, DEFAULT_TIMEOUT);
+    }
+
+    public TCPConnectProbe(int port, int timeout) {
+        this.port = port;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public void probe(InetAddress address, ProbeListener listener) {
+        ProbeSelector.submit(new ProbeSelector.Probe(new InetSocketAddress(address, port), null, timeout, listener));
+    }
+}
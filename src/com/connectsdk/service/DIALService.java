@@ -25,6 +25,9 @@ import com.connectsdk.core.Log;
 import com.connectsdk.core.Util;
 import com.connectsdk.discovery.DiscoveryFilter;
 import com.connectsdk.etc.helper.DeviceServiceReachability;
+import com.connectsdk.etc.helper.HttpHeadProbe;
+import com.connectsdk.etc.helper.ReachabilityProbe;
+import com.connectsdk.etc.helper.TCPConnectProbe;
 import com.connectsdk.etc.helper.HttpConnection;
 import com.connectsdk.etc.helper.HttpMessage;
 import com.connectsdk.service.capability.CapabilityMethods;
@@ -43,7 +46,9 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.net.MalformedURLException;
 import java.net.URI;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
@@ -363,15 +368,21 @@ public class DIALService extends DeviceService implements Launcher {
 
     @Override
     public void connect() {
-        //  TODO:  Fix this for roku.  Right now it is using the InetAddress reachable function.  Need to use an HTTP Method.
-//        mServiceReachability = DeviceServiceReachability.getReachability(serviceDescription.getIpAddress(), this);
-//        mServiceReachability.start();
+        startReachability(getReachabilityProbe());
 
         connected = true;
 
         reportConnected(true);
     }
 
+    private ReachabilityProbe getReachabilityProbe() {
+        try {
+            return new HttpHeadProbe(new URL(serviceDescription.getApplicationURL()));
+        } catch (MalformedURLException e) {
+            return new TCPConnectProbe(serviceDescription.getPort());
+        }
+    }
+
     @Override
     public void disconnect() {
         connected = false;
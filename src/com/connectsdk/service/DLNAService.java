@@ -30,6 +30,7 @@ import com.connectsdk.discovery.DiscoveryFilter;
 import com.connectsdk.discovery.DiscoveryManager;
 import com.connectsdk.discovery.provider.ssdp.Service;
 import com.connectsdk.etc.helper.DeviceServiceReachability;
+import com.connectsdk.etc.helper.TCPConnectProbe;
 import com.connectsdk.etc.helper.HttpConnection;
 import com.connectsdk.service.capability.CapabilityMethods;
 import com.connectsdk.service.capability.MediaControl;
@@ -45,21 +46,20 @@ import com.connectsdk.service.config.ServiceConfig;
 import com.connectsdk.service.config.ServiceDescription;
 import com.connectsdk.service.sessions.LaunchSession;
 import com.connectsdk.service.sessions.LaunchSession.LaunchSessionType;
+import com.connectsdk.service.upnp.DLNACommand;
+import com.connectsdk.service.upnp.DLNACommand.ServiceType;
 import com.connectsdk.service.upnp.DLNAHttpServer;
 import com.connectsdk.service.upnp.DLNAMediaInfoParser;
+import com.connectsdk.service.upnp.DLNAMessageBuilder;
+import com.connectsdk.service.upnp.DLNAResponseParser;
+import com.connectsdk.service.upnp.DLNAResponseParser.PositionInfo;
+import com.connectsdk.service.upnp.DLNASubscriptionManager;
+import com.connectsdk.service.upnp.DLNATimeFormat;
 
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.w3c.dom.DOMException;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.xmlpull.v1.XmlPullParser;
-import org.xmlpull.v1.XmlPullParserFactory;
 
 import java.io.IOException;
-import java.io.StringReader;
-import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URI;
@@ -67,27 +67,14 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLDecoder;
 import java.net.UnknownHostException;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 
 public class DLNAService extends DeviceService implements PlaylistControl, MediaControl, MediaPlayer, VolumeControl {
@@ -112,13 +99,30 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
     Context context;
 
     String avTransportURL, renderingControlURL, connectionControlURL;
+    // control URLs of the services, replaced as a whole when the service description changes
+    volatile Map<ServiceType, URI> controlURIs = new EnumMap<ServiceType, URI>(ServiceType.class);
 
     DLNAHttpServer httpServer;
+    final List<URLServiceSubscription<?>> subscriptions = new CopyOnWriteArrayList<URLServiceSubscription<?>>();
+
+    DLNASubscriptionManager subscriptionManager;
+    // event subscriptions of the services of the device, guarded by subscriptions
+    final List<DLNASubscriptionManager.Subscription> eventSubscriptions =
+            new ArrayList<DLNASubscriptionManager.Subscription>();
 
-    Map<String, String> SIDList;
-    Timer resubscriptionTimer;
+    private final DLNASubscriptionManager.SubscriptionListener eventSubscriptionListener =
+            new DLNASubscriptionManager.SubscriptionListener() {
+
+        @Override
+        public void onSubscribed(DLNASubscriptionManager.Subscription subscription, String sid) {
+            httpServer.register(sid, subscriptions);
+        }
 
-    private static int TIMEOUT = 300;
+        @Override
+        public void onExpired(DLNASubscriptionManager.Subscription subscription, String sid) {
+            httpServer.unregister(sid);
+        }
+    };
 
     interface PositionInfoListener {
         public void onGetPositionInfoSuccess(String positionInfoXml);
@@ -126,15 +130,15 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
     }
 
     public DLNAService(ServiceDescription serviceDescription, ServiceConfig serviceConfig) {
-        this(serviceDescription, serviceConfig, DiscoveryManager.getInstance().getContext(), new DLNAHttpServer());
+        this(serviceDescription, serviceConfig, DiscoveryManager.getInstance().getContext(), DLNAHttpServer.getInstance());
     }
 
     public DLNAService(ServiceDescription serviceDescription, ServiceConfig serviceConfig, Context context, DLNAHttpServer dlnaServer) {
         super(serviceDescription, serviceConfig);
         this.context = context;
-        SIDList = new HashMap<String, String>();
         updateControlURL();
         httpServer = dlnaServer;
+        subscriptionManager = DLNASubscriptionManager.getInstance();
     }
 
     public static DiscoveryFilter discoveryFilter() {
@@ -168,6 +172,7 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
 
     private void updateControlURL() {
         List<Service> serviceList = serviceDescription.getServiceList();
+        Map<ServiceType, URI> uris = new EnumMap<ServiceType, URI>(ServiceType.class);
 
         if (serviceList != null) {
             for (int i = 0; i < serviceList.size(); i++) {
@@ -187,6 +192,23 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
 
             }
         }
+
+        putControlURI(uris, ServiceType.AV_TRANSPORT, avTransportURL);
+        putControlURI(uris, ServiceType.RENDERING_CONTROL, renderingControlURL);
+        putControlURI(uris, ServiceType.CONNECTION_MANAGER, connectionControlURL);
+        controlURIs = uris;
+    }
+
+    private static void putControlURI(Map<ServiceType, URI> uris, ServiceType type, String url) {
+        if (url == null) {
+            return;
+        }
+
+        try {
+            uris.put(type, URI.create(url));
+        } catch (IllegalArgumentException e) {
+            Log.w(Util.T, "Invalid control URL: {}", url);
+        }
     }
 
     String makeControlURL(String base, String path) {
@@ -222,7 +244,7 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
                     @Override
                     public void run() {
                         String baseUrl = "http://" + getServiceDescription().getIpAddress() + ":" + getServiceDescription().getPort();
-                        String trackMetaData = parseData(positionInfoXml, "TrackMetaData");
+                        String trackMetaData = DLNAResponseParser.parsePositionInfo(positionInfoXml).getTrackMetaData();
                         MediaInfo info = DLNAMediaInfoParser.getMediaInfo(trackMetaData, baseUrl);
                         Util.postSuccess(listener, info);
                     }
@@ -292,7 +314,7 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
                     }
                 };
 
-                ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(DLNAService.this, method, payload, playResponseListener);
+                DLNACommand<ResponseListener<Object>> request = new DLNACommand<ResponseListener<Object>>(DLNAService.this, ServiceType.AV_TRANSPORT, method, payload, playResponseListener);
                 request.send();
             }
 
@@ -320,7 +342,7 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
 
         String payload = getMessageXml(AV_TRANSPORT_URN, method, instanceId, params);
 
-        ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(DLNAService.this, method, payload, responseListener);
+        DLNACommand<ResponseListener<Object>> request = new DLNACommand<ResponseListener<Object>>(DLNAService.this, ServiceType.AV_TRANSPORT, method, payload, responseListener);
         request.send();
     }
 
@@ -412,7 +434,7 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
 
         String payload = getMessageXml(AV_TRANSPORT_URN, method, instanceId, parameters);
 
-        ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, method, payload, listener);
+        DLNACommand<ResponseListener<Object>> request = new DLNACommand<ResponseListener<Object>>(this, ServiceType.AV_TRANSPORT, method, payload, listener);
         request.send();
     }
 
@@ -423,7 +445,7 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
 
         String payload = getMessageXml(AV_TRANSPORT_URN, method, instanceId, null);
 
-        ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, method, payload, listener);
+        DLNACommand<ResponseListener<Object>> request = new DLNACommand<ResponseListener<Object>>(this, ServiceType.AV_TRANSPORT, method, payload, listener);
         request.send();
     }
 
@@ -434,7 +456,7 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
 
         String payload = getMessageXml(AV_TRANSPORT_URN, method, instanceId, null);
 
-        ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, method, payload, listener);
+        DLNACommand<ResponseListener<Object>> request = new DLNACommand<ResponseListener<Object>>(this, ServiceType.AV_TRANSPORT, method, payload, listener);
         request.send();
     }
 
@@ -469,7 +491,7 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
 
         String payload = getMessageXml(AV_TRANSPORT_URN, method, instanceId, null);
 
-        ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, method, payload, listener);
+        DLNACommand<ResponseListener<Object>> request = new DLNACommand<ResponseListener<Object>>(this, ServiceType.AV_TRANSPORT, method, payload, listener);
         request.send();
     }
 
@@ -480,7 +502,7 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
 
         String payload = getMessageXml(AV_TRANSPORT_URN, method, instanceId, null);
 
-        ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, method, payload, listener);
+        DLNACommand<ResponseListener<Object>> request = new DLNACommand<ResponseListener<Object>>(this, ServiceType.AV_TRANSPORT, method, payload, listener);
         request.send();
     }
 
@@ -516,17 +538,13 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
 
         String payload = getMessageXml(AV_TRANSPORT_URN, method, instanceId, parameters);
 
-        ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, method, payload, listener);
+        DLNACommand<ResponseListener<Object>> request = new DLNACommand<ResponseListener<Object>>(this, ServiceType.AV_TRANSPORT, method, payload, listener);
         request.send();
     }
 
     @Override
     public void seek(long position, ResponseListener<Object> listener) {
-        long second = (position / 1000) % 60;
-        long minute = (position / (1000 * 60)) % 60;
-        long hour = (position / (1000 * 60 * 60)) % 24;
-        String time = String.format(Locale.US, "%02d:%02d:%02d", hour, minute, second);
-        seek("REL_TIME", time, listener);
+        seek("REL_TIME", DLNATimeFormat.format(position), listener);
     }
 
     private void getPositionInfo(final PositionInfoListener listener) {
@@ -551,33 +569,50 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
             }
         };
 
-        ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, method, payload, responseListener);
+        DLNACommand<ResponseListener<Object>> request = new DLNACommand<ResponseListener<Object>>(this, ServiceType.AV_TRANSPORT, method, payload, responseListener);
         request.send();
     }
 
+    /**
+     * Queries GetPositionInfo, which reports position, duration and metadata of the current track at once.
+     */
+    public void getPositionInfo(final ResponseListener<PositionInfo> listener) {
+        getPositionInfo(new PositionInfoListener() {
+
+            @Override
+            public void onGetPositionInfoSuccess(String positionInfoXml) {
+                Util.postSuccess(listener, DLNAResponseParser.parsePositionInfo(positionInfoXml));
+            }
+
+            @Override
+            public void onGetPositionInfoFailed(ServiceCommandError error) {
+                Util.postError(listener, error);
+            }
+        });
+    }
+
     @Override
     public void getDuration(final DurationListener listener) {
         getPositionInfo(new PositionInfoListener() {
 
             @Override
             public void onGetPositionInfoSuccess(String positionInfoXml) {
-                String strDuration = parseData(positionInfoXml, "TrackDuration");
+                PositionInfo info = DLNAResponseParser.parsePositionInfo(positionInfoXml);
+                String strDuration = info.getTrackDuration();
 
-                String trackMetaData = parseData(positionInfoXml, "TrackMetaData");
-                MediaInfo info = DLNAMediaInfoParser.getMediaInfo(trackMetaData);
                 // Check if duration we get not equals 0 or media is image, otherwise wait 1 second and try again
                 if ((!strDuration.equals("0:00:00")) || (info.getMimeType().contains("image"))) {
                     long milliTimes = convertStrTimeFormatToLong(strDuration);
 
                     Util.postSuccess(listener, milliTimes);
-                } else new Timer().schedule(new TimerTask() {
+                } else Util.runInBackground(new Runnable() {
 
                     @Override
                     public void run() {
                         getDuration(listener);
 
                     }
-                }, 1000);
+                }, 1000, TimeUnit.MILLISECONDS);
 
             }
 
@@ -594,7 +629,7 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
 
             @Override
             public void onGetPositionInfoSuccess(String positionInfoXml) {
-                String strDuration = parseData(positionInfoXml, "RelTime");
+                String strDuration = DLNAResponseParser.parsePositionInfo(positionInfoXml).getRelTime();
 
                 long milliTimes = convertStrTimeFormatToLong(strDuration);
 
@@ -618,47 +653,12 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
 
         String payload = getMessageXml(AV_TRANSPORT_URN, method, instanceId, parameters);
 
-        ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, method, payload, listener);
+        DLNACommand<ResponseListener<Object>> request = new DLNACommand<ResponseListener<Object>>(this, ServiceType.AV_TRANSPORT, method, payload, listener);
         request.send();
     }
 
     protected String getMessageXml(String serviceURN, String method, String instanceId, Map<String, String> params) {
-        try {
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            DocumentBuilder db = dbf.newDocumentBuilder();
-            Document doc = db.newDocument();
-            doc.setXmlStandalone(true);
-            doc.setXmlVersion("1.0");
-
-            Element root = doc.createElement("s:Envelope");
-            Element bodyElement = doc.createElement("s:Body");
-            Element methodElement = doc.createElementNS(serviceURN, "u:" + method);
-            Element instanceElement = doc.createElement("InstanceID");
-
-            root.setAttribute("s:encodingStyle", "http://schemas.xmlsoap.org/soap/encoding/");
-            root.setAttribute("xmlns:s", "http://schemas.xmlsoap.org/soap/envelope/");
-
-            doc.appendChild(root);
-            root.appendChild(bodyElement);
-            bodyElement.appendChild(methodElement);
-            if (instanceId != null) {
-                instanceElement.setTextContent(instanceId);
-                methodElement.appendChild(instanceElement);
-            }
-
-            if (params != null) {
-                for (Map.Entry<String, String> entry : params.entrySet()) {
-                    String key = entry.getKey();
-                    String value = entry.getValue();
-                    Element element = doc.createElement(key);
-                    element.setTextContent(value);
-                    methodElement.appendChild(element);
-                }
-            }
-            return xmlToString(doc, true);
-        } catch (Exception e) {
-            return null;
-        }
+        return DLNAMessageBuilder.getMessageXml(serviceURN, method, instanceId, params);
     }
 
     protected String getMetadata(String mediaURL, SubtitleInfo subtitle, String mime, String title, String description, String iconUrl) {
@@ -672,45 +672,13 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
                 objectClass = "object.item.audioItem";
             }
 
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            DocumentBuilder db = dbf.newDocumentBuilder();
-            Document doc = db.newDocument();
-
-            Element didlRoot = doc.createElement("DIDL-Lite");
-            Element itemElement = doc.createElement("item");
-            Element titleElement = doc.createElement("dc:title");
-            Element descriptionElement = doc.createElement("dc:description");
-            Element resElement = doc.createElement("res");
-            Element albumArtElement = doc.createElement("upnp:albumArtURI");
-            Element clazzElement = doc.createElement("upnp:class");
-
-            didlRoot.appendChild(itemElement);
-            itemElement.appendChild(titleElement);
-            itemElement.appendChild(descriptionElement);
-            itemElement.appendChild(resElement);
-            itemElement.appendChild(albumArtElement);
-            itemElement.appendChild(clazzElement);
-
-            didlRoot.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns", "urn:schemas-upnp-org:metadata-1-0/DIDL-Lite/");
-            didlRoot.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:upnp", "urn:schemas-upnp-org:metadata-1-0/upnp/");
-            didlRoot.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:dc", "http://purl.org/dc/elements/1.1/");
-            didlRoot.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:sec", "http://www.sec.co.kr/");
-
-            titleElement.setTextContent(title);
-            descriptionElement.setTextContent(description);
-            resElement.setTextContent(encodeURL(mediaURL));
-            albumArtElement.setTextContent(encodeURL(iconUrl));
-            clazzElement.setTextContent(objectClass);
-
-            itemElement.setAttribute("id", "1000");
-            itemElement.setAttribute("parentID", "0");
-            itemElement.setAttribute("restricted", "0");
-
-            resElement.setAttribute("protocolInfo", "http-get:*:" + mime + ":DLNA.ORG_OP=01");
+            String subtitleURL = null;
+            String mimeType = null;
+            String type = null;
 
             if (subtitle != null) {
-                String mimeType = (subtitle.getMimeType() == null) ? DEFAULT_SUBTITLE_TYPE : subtitle.getMimeType();
-                String type;
+                subtitleURL = subtitle.getUrl();
+                mimeType = (subtitle.getMimeType() == null) ? DEFAULT_SUBTITLE_TYPE : subtitle.getMimeType();
                 String[] typeParts =  mimeType.split("/");
                 if (typeParts != null && typeParts.length == 2) {
                     type = typeParts[1];
@@ -718,42 +686,14 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
                     mimeType = DEFAULT_SUBTITLE_MIMETYPE;
                     type = DEFAULT_SUBTITLE_TYPE;
                 }
-
-
-                resElement.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:pv", "http://www.pv.com/pvns/");
-                resElement.setAttribute("pv:subtitleFileUri", subtitle.getUrl());
-                resElement.setAttribute("pv:subtitleFileType", type);
-
-                Element smiResElement = doc.createElement("res");
-                smiResElement.setAttribute("protocolInfo", "http-get:*:smi/caption");
-                smiResElement.setTextContent(subtitle.getUrl());
-                itemElement.appendChild(smiResElement);
-
-                Element srtResElement = doc.createElement("res");
-                srtResElement.setAttribute("protocolInfo", "http-get:*:"+mimeType+":");
-                srtResElement.setTextContent(subtitle.getUrl());
-                itemElement.appendChild(srtResElement);
-
-                Element captionInfoExElement = doc.createElement("sec:CaptionInfoEx");
-                captionInfoExElement.setAttribute("sec:type", type);
-                captionInfoExElement.setTextContent(subtitle.getUrl());
-                itemElement.appendChild(captionInfoExElement);
-
-                Element captionInfoElement = doc.createElement("sec:CaptionInfo");
-                captionInfoElement.setAttribute("sec:type", type);
-                captionInfoElement.setTextContent(subtitle.getUrl());
-                itemElement.appendChild(captionInfoElement);
             }
 
-            doc.appendChild(didlRoot);
-            
-                return xmlToString(doc, false);
-            } catch (TransformerException | ParserConfigurationException | DOMException | MalformedURLException | UnsupportedEncodingException | URISyntaxException e) {
-                e.printStackTrace();
-                return null;
-            }
-        
-       
+            return DLNAMessageBuilder.getMetadata(title, description, encodeURL(mediaURL), mime,
+                    encodeURL(iconUrl), objectClass, subtitle != null, subtitleURL, mimeType, type);
+        } catch (MalformedURLException | UnsupportedEncodingException | URISyntaxException e) {
+            e.printStackTrace();
+            return null;
+        }
     }
 
     String encodeURL(String mediaURL) throws MalformedURLException, URISyntaxException, UnsupportedEncodingException {
@@ -769,20 +709,6 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
         return mediaURL;
     }
 
-    String xmlToString(Node source, boolean xmlDeclaration) throws TransformerException {
-        DOMSource domSource = new DOMSource(source);
-        StringWriter writer = new StringWriter();
-        StreamResult result = new StreamResult(writer);
-        TransformerFactory tf = TransformerFactory.newInstance();
-        Transformer transformer = tf.newTransformer();
-        if (!xmlDeclaration) {
-            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-        }
-        transformer.transform(domSource, result);
-        return writer.toString();
-    }
-
-
     @Override
     public void sendCommand(final ServiceCommand<?> mCommand) {
         Util.runInBackground(new Runnable() {
@@ -795,39 +721,37 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
                 String method = command.getTarget();
                 String payload = (String) command.getPayload();
 
-                String targetURL = null;
-                String serviceURN = null;
+                ServiceType serviceType = null;
 
                 if (payload == null) {
                     Util.postError(command.getResponseListener(), new ServiceCommandError(0, "Cannot process the command, \"payload\" is missed", null));
                     return;
                 }
 
-                if (payload.contains(AV_TRANSPORT_URN)) {
-                    targetURL = avTransportURL;
-                    serviceURN = AV_TRANSPORT_URN;
-                } else if (payload.contains(RENDERING_CONTROL_URN)) {
-                    targetURL = renderingControlURL;
-                    serviceURN = RENDERING_CONTROL_URN;
-                } else if (payload.contains(CONNECTION_MANAGER_URN)) {
-                    targetURL = connectionControlURL;
-                    serviceURN = CONNECTION_MANAGER_URN;
+                if (command instanceof DLNACommand) {
+                    serviceType = ((DLNACommand<?>) command).getServiceType();
+                }
+                if (serviceType == null) {
+                    // built without a service type, e.g. by a subclass
+                    serviceType = ServiceType.find(payload);
                 }
 
-                if (serviceURN == null) {
+                if (serviceType == null) {
                     Util.postError(command.getResponseListener(), new ServiceCommandError(0, "Cannot process the command, \"serviceURN\" is missed", null));
                     return;
                 }
 
-                if (targetURL == null) {
+                URI targetURI = controlURIs.get(serviceType);
+
+                if (targetURI == null) {
                     Util.postError(command.getResponseListener(), new ServiceCommandError(0, "Cannot process the command, \"targetURL\" is missed", null));
                     return;
                 }
 
                 try {
-                    HttpConnection connection = createHttpConnection(targetURL);
+                    HttpConnection connection = createHttpConnection(targetURI);
                     connection.setHeader("Content-Type", "text/xml; charset=utf-8");
-                    connection.setHeader("SOAPAction", String.format("\"%s#%s\"", serviceURN, method));
+                    connection.setHeader("SOAPAction", serviceType.getSOAPAction(method));
                     connection.setMethod(HttpConnection.Method.POST);
                     connection.setPayload(payload);
                     connection.execute();
@@ -845,7 +769,11 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
     }
 
     HttpConnection createHttpConnection(String targetURL) throws IOException {
-        return HttpConnection.newInstance(URI.create(targetURL));
+        return createHttpConnection(URI.create(targetURL));
+    }
+
+    HttpConnection createHttpConnection(URI targetURI) throws IOException {
+        return HttpConnection.newInstance(targetURI);
     }
 
     @Override
@@ -912,46 +840,16 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
         return xml.trim().substring(0, 4).equals("&lt;");
     }*/
 
-    String parseData(String response, String key) {
-        
-        // commented out to remove dependency to Html and Spanned - review if this is acutally required
-        //if (isXmlEncoded(response)) {
-        //    response = Html.fromHtml(response).toString();
-        //}
-        try {
-            XmlPullParser parser = XmlPullParserFactory.newInstance().newPullParser();
-            
-            parser.setInput(new StringReader(response));
-            int event;
-            boolean isFound = false;
-            do {
-                event = parser.next();
-                if (event == XmlPullParser.START_TAG) {
-                    String tag = parser.getName();
-                    if (key.equals(tag)) {
-                        isFound = true;
-                    }
-                } else if (event == XmlPullParser.TEXT && isFound) {
-                    return parser.getText();
-                }
-            } while (event != XmlPullParser.END_DOCUMENT);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return "";
-    }
-
     long convertStrTimeFormatToLong(String strTime) {
-        long time = 0;
-        SimpleDateFormat df = new SimpleDateFormat("HH:mm:ss");
-        try {
-            Date d = df.parse(strTime);
-            Date d2 = df.parse("00:00:00");
-            time = d.getTime() - d2.getTime();
-        } catch (ParseException e) {
-            Log.w(Util.T, "Invalid Time Format: " + strTime);
-        } catch (NullPointerException e) {
-            Log.w(Util.T, "Null time argument");
+        long time = DLNATimeFormat.parse(strTime);
+
+        if (time == DLNATimeFormat.INVALID) {
+            if (strTime == null) {
+                Log.w(Util.T, "Null time argument");
+            } else {
+                Log.w(Util.T, "Invalid Time Format: {}", strTime);
+            }
+            return 0;
         }
 
         return time;
@@ -968,8 +866,7 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
 
             @Override
             public void onSuccess(Object response) {
-                String transportState = parseData((String)response, "CurrentTransportState");
-                PlayStateStatus status = PlayStateStatus.convertTransportStateToPlayStateStatus(transportState);
+                PlayStateStatus status = DLNAResponseParser.parseTransportInfo((String) response).getPlayState();
 
                 Util.postSuccess(listener, status);
             }
@@ -980,7 +877,7 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
             }
         };
 
-        ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, method, payload, responseListener);
+        DLNACommand<ResponseListener<Object>> request = new DLNACommand<ResponseListener<Object>>(this, ServiceType.AV_TRANSPORT, method, payload, responseListener);
         request.send();
     }
 
@@ -993,26 +890,23 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
     }
 
     private void addSubscription(URLServiceSubscription<?> subscription) {
-        if (!httpServer.isRunning()) {
-            Util.runInBackground(new Runnable() {
+        synchronized (subscriptions) {
+            if (subscriptions.isEmpty()) {
+                httpServer.acquire();
+                subscribeServices();
+            }
 
-                @Override
-                public void run() {
-                    httpServer.start();
-                }
-            });
-            subscribeServices();
+            subscriptions.add(subscription);
         }
-
-        httpServer.getSubscriptions().add(subscription);
     }
 
     @Override
     public void unsubscribe(URLServiceSubscription<?> subscription) {
-        httpServer.getSubscriptions().remove(subscription);
-
-        if (httpServer.getSubscriptions().isEmpty()) {
-            unsubscribeServices();
+        synchronized (subscriptions) {
+            if (subscriptions.remove(subscription) && subscriptions.isEmpty()) {
+                unsubscribeServices();
+                httpServer.release();
+            }
         }
     }
 
@@ -1028,9 +922,7 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
 
     @Override
     public void connect() {
-        //  TODO:  Fix this for roku.  Right now it is using the InetAddress reachable function.  Need to use an HTTP Method.
-//        mServiceReachability = DeviceServiceReachability.getReachability(serviceDescription.getIpAddress(), this);
-//        mServiceReachability.start();
+        startReachability(new TCPConnectProbe(serviceDescription.getPort()));
 
         connected = true;
 
@@ -1059,7 +951,7 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
             }
         };
 
-        ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, method, payload, responseListener);
+        DLNACommand<ResponseListener<Object>> request = new DLNACommand<ResponseListener<Object>>(this, ServiceType.AV_TRANSPORT, method, payload, responseListener);
         request.send();
     }
 
@@ -1085,7 +977,7 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
             }
         };
 
-        ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, method, payload, responseListener);
+        DLNACommand<ResponseListener<Object>> request = new DLNACommand<ResponseListener<Object>>(this, ServiceType.CONNECTION_MANAGER, method, payload, responseListener);
         request.send();
     }
 
@@ -1109,7 +1001,9 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
         Util.runInBackground(new Runnable() {
             @Override
             public void run() {
-                httpServer.stop();
+                for (URLServiceSubscription<?> subscription : subscriptions) {
+                    subscription.unsubscribe();
+                }
             }
         }, true);
 
@@ -1125,6 +1019,16 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
     }
 
     public void subscribeServices() {
+        subscribeServices(null);
+    }
+
+    /**
+     * Subscribes to the events of all services of the device at once.
+     *
+     * @param listener gets onSuccess() once all services are subscribed, or onError() once all answered and some
+     *                 subscriptions failed
+     */
+    public void subscribeServices(final ResponseListener<Object> listener) {
         Util.runInBackground(new Runnable() {
 
             @Override
@@ -1134,6 +1038,7 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
                 myIpAddress = context.getIpAddress().getHostAddress();
                 
                 List<Service> serviceList = serviceDescription.getServiceList();
+                Map<URI, String> callbackURLs = new LinkedHashMap<URI, String>();
 
                 if (serviceList != null) {
                     for (int i = 0; i < serviceList.size(); i++) {
@@ -1143,104 +1048,58 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
                         }
 
                         try {
-                            HttpConnection connection = HttpConnection.newSubscriptionInstance(
-                                    new URI("http", "", serviceDescription.getIpAddress(), serviceDescription.getPort(), eventSubURL, "", ""));
-                            connection.setMethod(HttpConnection.Method.SUBSCRIBE);
-                            connection.setHeader("CALLBACK", "<http://" + myIpAddress + ":" + httpServer.getPort() + eventSubURL + ">");
-                            connection.setHeader("NT", "upnp:event");
-                            connection.setHeader("TIMEOUT", "Second-" + TIMEOUT);
-                            connection.setHeader("Connection", "close");
-                            connection.setHeader("Content-length", "0");
-                            connection.setHeader("USER-AGENT", "Android UPnp/1.1 ConnectSDK");
-                            connection.execute();
-                            if (connection.getResponseCode() == 200) {
-                                SIDList.put(serviceList.get(i).serviceType, connection.getResponseHeader("SID"));
-                            }
-                        } catch (Exception e) {
+                            callbackURLs.put(new URI("http", "", serviceDescription.getIpAddress(), serviceDescription.getPort(), eventSubURL, "", ""),
+                                    "http://" + myIpAddress + ":" + httpServer.getPort() + eventSubURL);
+                        } catch (URISyntaxException e) {
                             e.printStackTrace();
                         }
+                    }
+                }
 
+                synchronized (subscriptions) {
+                    if (subscriptions.isEmpty()) {
+                        Util.postError(listener, new ServiceCommandError(0, "Unsubscribed in the meantime", null));
+                        return;
+                    }
+                    // subscribed by a later call, whose subscriptions may not all have succeeded
+                    if (!eventSubscriptions.isEmpty()) {
+                        for (DLNASubscriptionManager.Subscription subscription : eventSubscriptions) {
+                            if (subscription.getSID() == null) {
+                                Util.postError(listener, new ServiceCommandError(0,
+                                        "Not all event subscriptions are active", null));
+                                return;
+                            }
+                        }
+                        Util.postSuccess(listener, null);
+                        return;
                     }
+
+                    eventSubscriptions.addAll(subscriptionManager.subscribe(callbackURLs, eventSubscriptionListener,
+                            listener));
                 }
             }
         });
-
-        resubscribeServices();
     }
 
+    /**
+     * Renews the event subscriptions right away. They are renewed on their own before they expire, this is only
+     * needed if the device may have lost them, e.g. after a restart.
+     */
     public void resubscribeServices() {
-        resubscriptionTimer = new Timer();
-        resubscriptionTimer.scheduleAtFixedRate(new TimerTask() {
-
-            @Override
-            public void run() {
-                Util.runInBackground(new Runnable() {
-
-                    @Override
-                    public void run() {
-                        List<Service> serviceList = serviceDescription.getServiceList();
-
-                        if (serviceList != null) {
-                            for (int i = 0; i < serviceList.size(); i++) {
-                                String eventSubURL = makeControlURL("/", serviceList.get(i).eventSubURL);
-                                if (eventSubURL == null) {
-                                    continue;
-                                }
-
-                                String SID = SIDList.get(serviceList.get(i).serviceType);
-                                try {
-                                    HttpConnection connection = HttpConnection.newSubscriptionInstance(
-                                            new URI("http", "", serviceDescription.getIpAddress(), serviceDescription.getPort(), eventSubURL, "", ""));
-                                    connection.setMethod(HttpConnection.Method.SUBSCRIBE);
-                                    connection.setHeader("TIMEOUT", "Second-" + TIMEOUT);
-                                    connection.setHeader("SID", SID);
-                                    connection.execute();
-                                } catch (Exception e) {
-                                    e.printStackTrace();
-                                }
-                            }
-                        }
-                    }
-                });
+        synchronized (subscriptions) {
+            for (DLNASubscriptionManager.Subscription subscription : eventSubscriptions) {
+                subscriptionManager.renew(subscription);
             }
-        }, TIMEOUT/2*1000, TIMEOUT/2*1000);
+        }
     }
 
     public void unsubscribeServices() {
-        if (resubscriptionTimer != null) {
-            resubscriptionTimer.cancel();
-        }
-
-        Util.runInBackground(new Runnable() {
-
-            @Override
-            public void run() {
-                final List<Service> serviceList = serviceDescription.getServiceList();
-
-                if (serviceList != null) {
-                    for (int i = 0; i < serviceList.size(); i++) {
-                        String eventSubURL = makeControlURL("/", serviceList.get(i).eventSubURL);
-                        if (eventSubURL == null) {
-                            continue;
-                        }
-
-                        String sid = SIDList.get(serviceList.get(i).serviceType);
-                        try {
-                            HttpConnection connection = HttpConnection.newSubscriptionInstance(
-                                    new URI("http", "", serviceDescription.getIpAddress(), serviceDescription.getPort(), eventSubURL, "", ""));
-                            connection.setMethod(HttpConnection.Method.UNSUBSCRIBE);
-                            connection.setHeader("SID", sid);
-                            connection.execute();
-                            if (connection.getResponseCode() == 200) {
-                                SIDList.remove(serviceList.get(i).serviceType);
-                            }
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                    }
-                }
+        synchronized (subscriptions) {
+            for (DLNASubscriptionManager.Subscription subscription : eventSubscriptions) {
+                subscriptionManager.unsubscribe(subscription);
             }
-        });
+            eventSubscriptions.clear();
+        }
     }
 
     @Override
@@ -1323,7 +1182,7 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
 
         String payload = getMessageXml(RENDERING_CONTROL_URN, method, instanceId, params);
 
-        ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, method, payload, listener);
+        DLNACommand<ResponseListener<Object>> request = new DLNACommand<ResponseListener<Object>>(this, ServiceType.RENDERING_CONTROL, method, payload, listener);
         request.send();
     }
 
@@ -1342,14 +1201,7 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
 
             @Override
             public void onSuccess(Object response) {
-                String currentVolume = parseData((String) response, "CurrentVolume");
-                int iVolume = 0;
-                try {
-                    //noinspection ResultOfMethodCallIgnored
-                    Integer.parseInt(currentVolume);
-                } catch (RuntimeException ex) {
-                    ex.printStackTrace();
-                }
+                int iVolume = Math.max(0, DLNAResponseParser.parseVolumeInfo((String) response).getVolume());
                 float fVolume = (float) (iVolume / 100.0);
 
                 Util.postSuccess(listener, fVolume);
@@ -1361,7 +1213,7 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
             }
         };
 
-        ServiceCommand<VolumeListener> request = new ServiceCommand<VolumeListener>(this, method, payload, responseListener);
+        DLNACommand<VolumeListener> request = new DLNACommand<VolumeListener>(this, ServiceType.RENDERING_CONTROL, method, payload, responseListener);
         request.send();
     }
 
@@ -1378,7 +1230,7 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
 
         String payload = getMessageXml(RENDERING_CONTROL_URN, method, instanceId, params);
 
-        ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, method, payload, listener);
+        DLNACommand<ResponseListener<Object>> request = new DLNACommand<ResponseListener<Object>>(this, ServiceType.RENDERING_CONTROL, method, payload, listener);
         request.send();
     }
 
@@ -1397,8 +1249,7 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
 
             @Override
             public void onSuccess(Object response) {
-                String currentMute = parseData((String) response, "CurrentMute");
-                boolean isMute = Boolean.parseBoolean(currentMute);
+                boolean isMute = DLNAResponseParser.parseVolumeInfo((String) response).isMute();
 
                 Util.postSuccess(listener, isMute);
             }
@@ -1409,7 +1260,7 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
             }
         };
 
-        ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, method, payload, responseListener);
+        DLNACommand<ResponseListener<Object>> request = new DLNACommand<ResponseListener<Object>>(this, ServiceType.RENDERING_CONTROL, method, payload, responseListener);
         request.send();
     }
 
@@ -35,6 +35,7 @@ import com.connectsdk.device.ConnectableDevice;
 import com.connectsdk.discovery.DiscoveryFilter;
 import com.connectsdk.etc.helper.DeviceServiceReachability;
 import com.connectsdk.etc.helper.DeviceServiceReachability.DeviceServiceReachabilityListener;
+import com.connectsdk.etc.helper.ReachabilityProbe;
 import com.connectsdk.service.capability.CapabilityMethods;
 import com.connectsdk.service.capability.CapabilityMethods.CapabilityPriorityLevel;
 import com.connectsdk.service.capability.ExternalInputControl;
@@ -644,6 +645,19 @@ public class DeviceService implements DeviceServiceReachabilityListener, Service
         removeCapabilities(Arrays.asList(capabilities));
     }
 
+    /**
+     * Starts watching the reachability of the device; onLoseReachability is called once it stops answering the probe.
+     */
+    protected void startReachability(ReachabilityProbe probe) {
+        if (mServiceReachability != null)
+            mServiceReachability.stop();
+
+        mServiceReachability = DeviceServiceReachability.getReachability(serviceDescription.getIpAddress(), probe, this);
+
+        if (mServiceReachability != null)
+            mServiceReachability.start();
+    }
+
     //  Unused by default.
     @Override public void onLoseReachability(DeviceServiceReachability reachability) { }
     // @endcond
@@ -1886,7 +1886,7 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
 
     @Override
     public void sendText(final String input) {
-        Log.d(Util.T, "Add to Queue: " + input);
+        Log.d(Util.T, "Add to Queue: {}", input);
         keyboardString.append(input);
         handleKeyboardInput("Editing", keyboardString.toString());
     }
@@ -2282,7 +2282,7 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
                     }
                     connection.execute();
                     int code = connection.getResponseCode();
-                    Log.d("", "RESP " + code);
+                    Log.d(Util.T, "RESP {}", code);
                     if (code == 200) {
                         Util.postSuccess(command.getResponseListener(), connection.getResponseString());
                     } else {
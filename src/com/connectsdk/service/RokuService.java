@@ -30,6 +30,8 @@ import com.connectsdk.device.ConnectableDevice;
 import com.connectsdk.discovery.DiscoveryFilter;
 import com.connectsdk.discovery.DiscoveryManager;
 import com.connectsdk.etc.helper.DeviceServiceReachability;
+import com.connectsdk.etc.helper.HttpHeadProbe;
+import com.connectsdk.etc.helper.TCPConnectProbe;
 import com.connectsdk.etc.helper.HttpConnection;
 import com.connectsdk.etc.helper.HttpMessage;
 import com.connectsdk.service.capability.CapabilityMethods;
@@ -57,7 +59,9 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
 import java.net.URI;
+import java.net.URL;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -804,7 +808,7 @@ public class RokuService extends DeviceService implements Launcher, MediaPlayer,
 
         String uri = requestURL(action, param);
 
-        Log.d(Util.T, "RokuService::send() | uri = " + uri);
+        Log.d(Util.T, "RokuService::send() | uri = {}", uri);
 
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
                 this, uri, null, listener);
@@ -885,7 +889,7 @@ public class RokuService extends DeviceService implements Launcher, MediaPlayer,
                 Object payload = command.getPayload();
 
                 try {
-                    Log.d("", "RESP " + command.getTarget());
+                    Log.d("", "RESP {}", command.getTarget());
                     HttpConnection connection = HttpConnection.newInstance(URI.create(command.getTarget()));
                     if (command.getHttpMethod().equalsIgnoreCase(ServiceCommand.TYPE_POST)) {
                         connection.setMethod(HttpConnection.Method.POST);
@@ -895,7 +899,7 @@ public class RokuService extends DeviceService implements Launcher, MediaPlayer,
                     }
                     connection.execute();
                     int code = connection.getResponseCode();
-                    Log.d("", "RESP " + code);
+                    Log.d("", "RESP {}", code);
                     if (code == 200 || code == 201) {
                         Util.postSuccess(command.getResponseListener(), connection.getResponseString());
                     } else {
@@ -1015,12 +1019,11 @@ public class RokuService extends DeviceService implements Launcher, MediaPlayer,
 
     @Override
     public void connect() {
-        // TODO: Fix this for roku. Right now it is using the InetAddress
-        // reachable function. Need to use an HTTP Method.
-        // mServiceReachability =
-        // DeviceServiceReachability.getReachability(serviceDescription.getIpAddress(),
-        // this);
-        // mServiceReachability.start();
+        try {
+            startReachability(new HttpHeadProbe(new URL(requestURL(null, null))));
+        } catch (MalformedURLException e) {
+            startReachability(new TCPConnectProbe(serviceDescription.getPort()));
+        }
 
         connected = true;
 
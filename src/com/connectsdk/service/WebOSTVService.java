@@ -77,7 +77,9 @@ import com.connectsdk.service.sessions.WebAppSession;
 import com.connectsdk.service.sessions.WebAppSession.WebAppPinStatusListener;
 import com.connectsdk.service.sessions.WebOSWebAppSession;
 import com.connectsdk.service.webos.WebOSTVKeyboardInput;
+import com.connectsdk.service.webos.WebOSTVMessage;
 import com.connectsdk.service.webos.WebOSTVMouseSocketConnection;
+import com.connectsdk.service.webos.WebOSTVReconnector;
 import com.connectsdk.service.webos.WebOSTVServiceSocketClient;
 import com.connectsdk.service.webos.WebOSTVServiceSocketClient.WebOSTVServiceSocketClientListener;
 
@@ -162,6 +164,10 @@ public class WebOSTVService extends DeviceService
 
     WebOSTVServiceSocketClient socket;
 
+    // Restores the connection in the background if the socket is lost unexpectedly
+    WebOSTVReconnector reconnector;
+    boolean autoReconnect = true;
+
     List<String> permissions;
 
     public WebOSTVService(ServiceDescription serviceDescription, ServiceConfig serviceConfig) {
@@ -172,6 +178,7 @@ public class WebOSTVService extends DeviceService
 
         mAppToAppIdMappings = new ConcurrentHashMap<String, String>();
         mWebAppSessions = new ConcurrentHashMap<String, WebOSWebAppSession>();
+        reconnector = new WebOSTVReconnector(this);
     }
 
     @Override
@@ -269,9 +276,31 @@ public class WebOSTVService extends DeviceService
         }
     }
 
+    /**
+     * Sets whether the service reconnects in the background after the connection to the TV was lost unexpectedly.
+     * Subscriptions and queries are replayed once reconnected. Enabled by default.
+     */
+    public void setAutoReconnect(boolean autoReconnect) {
+        this.autoReconnect = autoReconnect;
+
+        if (!autoReconnect) {
+            reconnector.cancel(new ServiceCommandError(0, "connection lost", null));
+        }
+    }
+
+    public boolean isAutoReconnect() {
+        return autoReconnect;
+    }
+
+    public WebOSTVReconnector getReconnector() {
+        return reconnector;
+    }
+
     @Override
     public void disconnect() {
-        Log.d(Util.T, "attempting to disconnect to " + serviceDescription.getIpAddress());
+        Log.d(Util.T, "attempting to disconnect to {}", serviceDescription.getIpAddress());
+
+        reconnector.cancel(new ServiceCommandError(0, "disconnected", null));
 
         Util.runOnUI(new Runnable() {
 
@@ -330,7 +359,7 @@ public class WebOSTVService extends DeviceService
         }
 
         @Override
-        public Boolean onReceiveMessage(JSONObject message) {
+        public Boolean onReceiveMessage(WebOSTVMessage message) {
             return true;
         }
 
@@ -340,6 +369,12 @@ public class WebOSTVService extends DeviceService
             socket.disconnect();
             socket = null;
 
+            if (reconnector.isActive()) {
+                // the TV is still unreachable, the failure is only reported once the reconnect is given up
+                reconnector.onAttemptFailed(error);
+                return;
+            }
+
             Util.runOnUI(new Runnable() {
 
                 @Override
@@ -354,14 +389,35 @@ public class WebOSTVService extends DeviceService
         @Override
         public void onConnect() {
             reportConnected(true);
+
+            reconnector.onConnected();
         }
 
         @Override
         public void onCloseWithError(final ServiceCommandError error) {
+            List<ServiceCommand<?>> recoverable = socket.takeRecoverableCommands();
+
             socket.setListener(null);
             socket.disconnect();
             socket = null;
 
+            if (reconnector.isActive()) {
+                // lost again before the replay; keep what the socket had and try again
+                if (recoverable != null) {
+                    reconnector.start(recoverable);
+                }
+                reconnector.onAttemptFailed(error);
+                return;
+            }
+
+            if (autoReconnect && error != null && recoverable != null) {
+                reconnector.start(recoverable);
+            } else if (recoverable != null) {
+                for (ServiceCommand<?> command : recoverable) {
+                    Util.postError(command.getResponseListener(), new ServiceCommandError(0, "connection lost", null));
+                }
+            }
+
             Util.runOnUI(new Runnable() {
 
                 @Override
@@ -2889,6 +2945,40 @@ public class WebOSTVService extends DeviceService
     public void sendCommand(ServiceCommand<?> command) {
         if (socket != null) {
             socket.sendCommand(command);
+        } else {
+            hold(command);
+        }
+    }
+
+    private void hold(ServiceCommand<?> command) {
+        // sent once the connection is back
+        if (!reconnector.hold(command)) {
+            Util.postError(command.getResponseListener(), new ServiceCommandError(0, "not connected", null));
+        }
+    }
+
+    /**
+     * Sends a group of SSAP requests in one write batch and reports all responses together.
+     *
+     * @param commands requests to send
+     * @param listener called with the responses in the order of the commands, or with the first error
+     */
+    public void sendCommands(List<? extends ServiceCommand<?>> commands, ResponseListener<List<Object>> listener) {
+        if (socket != null) {
+            socket.sendCommands(commands, listener);
+            return;
+        }
+
+        if (commands.isEmpty()) {
+            Util.postSuccess(listener, new ArrayList<Object>());
+            return;
+        }
+
+        // held like single commands, the listener gets the first error if the connection doesn't come back
+        WebOSTVServiceSocketClient.groupResponses(commands, listener);
+
+        for (ServiceCommand<?> command : commands) {
+            hold(command);
         }
     }
 
@@ -2896,6 +2986,8 @@ public class WebOSTVService extends DeviceService
     public void unsubscribe(URLServiceSubscription<?> subscription) {
         if (socket != null) {
             socket.unsubscribe(subscription);
+        } else {
+            reconnector.remove(subscription);
         }
     }
 
@@ -132,6 +132,10 @@ public class ServiceCommand<T extends ResponseListener<? extends Object>> {
         return responseListener;
     }
 
+    public void setResponseListener(ResponseListener<Object> responseListener) {
+        this.responseListener = responseListener;
+    }
+
     public interface ServiceCommandProcessor {
         public void unsubscribe(URLServiceSubscription<?> subscription);
         public void unsubscribe(ServiceSubscription<?> subscription);
@@ -128,7 +128,7 @@ public class NetcastHttpServer {
 
             String body = sb.toString();
 
-            Log.d(Util.T, "got message body: " + body);
+            Log.d(Util.T, "got message body: {}", body);
 
             Calendar calendar = Calendar.getInstance();
             SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
@@ -171,7 +171,7 @@ public class NetcastHttpServer {
             if (body.contains("ChannelChanged")) {
                 ChannelInfo channel = NetcastChannelParser.parseRawChannelData(handler.getJSONObject());
 
-                Log.d(Util.T, "Channel Changed: " + channel.getNumber());
+                Log.d(Util.T, "Channel Changed: {}", channel.getNumber());
 
                 for (URLServiceSubscription<?> sub: subscriptions) {
                     if (sub.getTarget().equalsIgnoreCase("ChannelChanged")) {
@@ -197,7 +197,7 @@ public class NetcastHttpServer {
                     e.printStackTrace();
                 }
 
-                Log.d(Util.T, "KeyboardFocused?: " + focused);
+                Log.d(Util.T, "KeyboardFocused?: {}", focused);
 
                 for (URLServiceSubscription<?> sub: subscriptions) {
                     if (sub.getTarget().equalsIgnoreCase("KeyboardVisible")) {
@@ -26,6 +26,9 @@ import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
+import com.connectsdk.core.Log;
+import com.connectsdk.core.Util;
+
 public class NetcastPOSTRequestParser extends DefaultHandler {
     private JSONObject object;
     private JSONObject subObject;
@@ -68,7 +71,7 @@ public class NetcastPOSTRequestParser extends DefaultHandler {
     @Override
     public void endElement(String uri, String localName, String qName) throws SAXException {
         try {
-            System.out.println("XML key: " + qName + ", value: " + value);
+            Log.d(Util.T, "XML key: {}, value: {}", qName, value);
             if (qName.equalsIgnoreCase(CHANNEL_TYPE)) {
                 object.put("channelModeName", value);
             }
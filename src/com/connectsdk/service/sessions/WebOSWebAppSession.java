@@ -47,6 +47,7 @@ import com.connectsdk.service.command.ServiceCommandError;
 import com.connectsdk.service.command.ServiceSubscription;
 import com.connectsdk.service.command.URLServiceSubscription;
 import com.connectsdk.service.sessions.LaunchSession.LaunchSessionType;
+import com.connectsdk.service.webos.WebOSTVMessage;
 import com.connectsdk.service.webos.WebOSTVServiceSocketClient;
 import com.connectsdk.service.webos.WebOSTVServiceSocketClient.WebOSTVServiceSocketClientListener;
 
@@ -164,7 +165,7 @@ public class WebOSWebAppSession extends WebAppSession {
         }
 
         @Override
-        public Boolean onReceiveMessage(JSONObject payload) {
+        public Boolean onReceiveMessage(WebOSTVMessage payload) {
             String type = payload.optString("type");
 
             if ("p2p".equals(type)) {
@@ -0,0 +1,74 @@
+package com.connectsdk.service.upnp;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.connectsdk.service.DLNAService;
+import com.connectsdk.service.capability.listeners.ResponseListener;
+import com.connectsdk.service.command.ServiceCommand;
+
+/**
+ * SOAP action sent to one of the services of a DLNA renderer. The service is given when the command is built, so
+ * sending it neither searches the payload for the service URN nor formats the SOAPAction header.
+ */
+public class DLNACommand<T extends ResponseListener<? extends Object>> extends ServiceCommand<T> {
+
+    public enum ServiceType {
+        AV_TRANSPORT(DLNAService.AV_TRANSPORT_URN),
+        RENDERING_CONTROL(DLNAService.RENDERING_CONTROL_URN),
+        CONNECTION_MANAGER(DLNAService.CONNECTION_MANAGER_URN);
+
+        private final String urn;
+        // SOAPAction header values per action name, the set of actions is small and fixed
+        private final ConcurrentMap<String, String> soapActions = new ConcurrentHashMap<String, String>();
+
+        ServiceType(String urn) {
+            this.urn = urn;
+        }
+
+        public String getURN() {
+            return urn;
+        }
+
+        /** @return the quoted SOAPAction header value of the action */
+        public String getSOAPAction(String action) {
+            String soapAction = soapActions.get(action);
+
+            if (soapAction == null) {
+                soapAction = "\"" + urn + "#" + action + "\"";
+                soapActions.putIfAbsent(action, soapAction);
+            }
+            return soapAction;
+        }
+
+        /**
+         * Finds the service of a payload built without a service type by the URN it contains.
+         *
+         * @return the service type, or null if the payload contains none of the URNs
+         */
+        public static ServiceType find(String payload) {
+            for (ServiceType type : values()) {
+                if (payload.contains(type.urn)) {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final ServiceType serviceType;
+
+    /**
+     * @param action name of the SOAP action, sent as the target of the command
+     * @param payload SOAP envelope of the action
+     */
+    public DLNACommand(ServiceCommandProcessor processor, ServiceType serviceType, String action, String payload,
+            ResponseListener<Object> listener) {
+        super(processor, action, payload, listener);
+        this.serviceType = serviceType;
+    }
+
+    public ServiceType getServiceType() {
+        return serviceType;
+    }
+}
@@ -0,0 +1,392 @@
+package com.connectsdk.service.upnp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * HTTP framing of one connection to the event server. Requests are delimited by Content-Length or chunked transfer
+ * encoding; for renderers that send neither with a NOTIFY, the body ends with the connection or with the closing
+ * propertyset tag, as the event server always accepted. Several requests can follow each other on a kept alive
+ * connection.
+ */
+final class DLNAEventConnection {
+
+    static final int MAX_HEADER_SIZE = 16 * 1024;
+    static final int MAX_BODY_SIZE = 1024 * 1024;
+
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+    private static final byte[] HEADER_END = { '\r', '\n', '\r', '\n' };
+    private static final byte[] PROPERTYSET_END = "</e:propertyset>".getBytes(StandardCharsets.US_ASCII);
+
+    static final class Request {
+        final String method;
+        final String version;
+        final Map<String, String> headers;
+        final byte[] body;
+
+        Request(String method, String version, Map<String, String> headers, byte[] body) {
+            this.method = method;
+            this.version = version;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        /** @param name header name in lower case */
+        String getHeader(String name) {
+            return headers.get(name);
+        }
+
+        boolean isKeepAlive() {
+            String connection = getHeader("connection");
+
+            if ("HTTP/1.0".equals(version)) {
+                return connection != null && connection.equalsIgnoreCase("keep-alive");
+            }
+            return connection == null || !connection.equalsIgnoreCase("close");
+        }
+    }
+
+    /** Thrown for requests that can't be framed, the status is sent back before closing. */
+    static final class BadRequestException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        BadRequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    final SocketChannel channel;
+
+    // data received and not consumed yet, in write mode
+    private ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private ByteBuffer out;
+    private boolean closeAfterWrite;
+    private boolean endOfStream;
+    private long lastActive = System.nanoTime();
+
+    // header of the request being received, -1 until complete
+    private int headerEnd = -1;
+    private int scanned;
+    private String method;
+    private String version;
+    private Map<String, String> headers;
+
+    DLNAEventConnection(SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    long getLastActive() {
+        return lastActive;
+    }
+
+    /**
+     * @return false once the peer closed its side
+     */
+    boolean read() throws IOException {
+        if (!in.hasRemaining()) {
+            grow();
+        }
+
+        int read = channel.read(in);
+
+        if (read < 0) {
+            endOfStream = true;
+            return false;
+        }
+        lastActive = System.nanoTime();
+        return true;
+    }
+
+    /**
+     * @return the next complete request, or null if more data is needed
+     */
+    Request nextRequest() throws BadRequestException {
+        if (headerEnd < 0 && !readHeader()) {
+            return null;
+        }
+
+        byte[] body = readBody();
+        if (body == null) {
+            return null;
+        }
+
+        Request request = new Request(method, version, headers, body);
+        headerEnd = -1;
+        scanned = 0;
+        headers = null;
+
+        return request;
+    }
+
+    /**
+     * Queues a response and writes as much of it as possible.
+     *
+     * @return true if the response was written completely
+     */
+    boolean respond(int status, String reason, boolean keepAlive) throws IOException {
+        String response = "HTTP/1.1 " + status + " " + reason + "\r\n" + "Content-Length: 0\r\n" + "Connection: "
+                + (keepAlive ? "keep-alive" : "close") + "\r\n\r\n";
+
+        out = ByteBuffer.wrap(response.getBytes(StandardCharsets.US_ASCII));
+        closeAfterWrite = !keepAlive;
+
+        return flush();
+    }
+
+    /**
+     * @return true if no response is pending anymore
+     */
+    boolean flush() throws IOException {
+        if (out != null) {
+            channel.write(out);
+
+            if (out.hasRemaining()) {
+                return false;
+            }
+            out = null;
+        }
+        return true;
+    }
+
+    boolean isCloseAfterWrite() {
+        return closeAfterWrite;
+    }
+
+    private boolean readHeader() throws BadRequestException {
+        int end = indexOf(HEADER_END, Math.max(0, scanned - HEADER_END.length + 1), in.position());
+
+        if (end < 0) {
+            scanned = in.position();
+
+            if (scanned > MAX_HEADER_SIZE) {
+                throw new BadRequestException(431, "Request Header Fields Too Large");
+            }
+            return false;
+        }
+
+        String header = new String(in.array(), 0, end, StandardCharsets.ISO_8859_1);
+        String[] lines = header.split("\r\n");
+        int start = 0;
+
+        // tolerate empty lines between requests
+        while (start < lines.length && lines[start].isEmpty()) {
+            start++;
+        }
+        if (start == lines.length) {
+            throw new BadRequestException(400, "Bad Request");
+        }
+
+        String[] requestLine = lines[start].split(" ");
+        if (requestLine.length != 3) {
+            throw new BadRequestException(400, "Bad Request");
+        }
+
+        method = requestLine[0];
+        version = requestLine[2];
+        headers = new HashMap<String, String>();
+
+        for (int i = start + 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+
+            if (colon > 0) {
+                headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.US),
+                        lines[i].substring(colon + 1).trim());
+            }
+        }
+
+        headerEnd = end + HEADER_END.length;
+        return true;
+    }
+
+    private byte[] readBody() throws BadRequestException {
+        String transferEncoding = headers.get("transfer-encoding");
+        String contentLength = headers.get("content-length");
+
+        if (transferEncoding != null && transferEncoding.toLowerCase(Locale.US).contains("chunked")) {
+            return readChunkedBody();
+        }
+
+        if (contentLength != null) {
+            int length;
+
+            try {
+                length = Integer.parseInt(contentLength);
+            } catch (NumberFormatException e) {
+                throw new BadRequestException(400, "Bad Request");
+            }
+
+            if (length < 0) {
+                throw new BadRequestException(400, "Bad Request");
+            }
+            if (length > MAX_BODY_SIZE) {
+                throw new BadRequestException(413, "Payload Too Large");
+            }
+            if (in.position() - headerEnd < length) {
+                return null;
+            }
+            return consume(headerEnd, length, headerEnd + length);
+        }
+
+        if (!method.equals("NOTIFY")) {
+            return consume(headerEnd, 0, headerEnd);
+        }
+
+        // no framing: the body ends with the connection or the event document
+        int length = in.position() - headerEnd;
+
+        if (endOfStream || endsWith(PROPERTYSET_END)) {
+            closeAfterWrite = true;
+            return consume(headerEnd, length, in.position());
+        }
+        if (length > MAX_BODY_SIZE) {
+            throw new BadRequestException(413, "Payload Too Large");
+        }
+        return null;
+    }
+
+    private byte[] readChunkedBody() throws BadRequestException {
+        byte[] data = in.array();
+        int limit = in.position();
+        int position = headerEnd;
+        int size = 0;
+
+        // first pass only checks that all chunks are there
+        while (true) {
+            int lineEnd = indexOf(HEADER_END, position, limit, 2);
+            if (lineEnd < 0) {
+                return null;
+            }
+
+            int chunkSize = parseChunkSize(data, position, lineEnd);
+            position = lineEnd + 2;
+
+            if (chunkSize == 0) {
+                // skip trailers up to the empty line
+                int end = indexOf(HEADER_END, position - 2, limit);
+                if (end < 0) {
+                    return null;
+                }
+                position = end + HEADER_END.length;
+                break;
+            }
+
+            size += chunkSize;
+            if (size > MAX_BODY_SIZE) {
+                throw new BadRequestException(413, "Payload Too Large");
+            }
+            if (limit - position < chunkSize + 2) {
+                return null;
+            }
+            position += chunkSize + 2;
+        }
+
+        byte[] body = new byte[size];
+        int offset = 0;
+        int chunk = headerEnd;
+
+        while (offset < size) {
+            int lineEnd = indexOf(HEADER_END, chunk, limit, 2);
+            int chunkSize = parseChunkSize(data, chunk, lineEnd);
+
+            System.arraycopy(data, lineEnd + 2, body, offset, chunkSize);
+            offset += chunkSize;
+            chunk = lineEnd + 2 + chunkSize + 2;
+        }
+
+        compact(position);
+        return body;
+    }
+
+    private static int parseChunkSize(byte[] data, int start, int end) throws BadRequestException {
+        int size = 0;
+        int i = start;
+
+        for (; i < end; i++) {
+            int digit = Character.digit(data[i], 16);
+
+            if (digit < 0) {
+                break;
+            }
+            if (size > (MAX_BODY_SIZE >> 4)) {
+                throw new BadRequestException(413, "Payload Too Large");
+            }
+            size = (size << 4) + digit;
+        }
+
+        // extensions after ';' are ignored
+        if (i == start || (i < end && data[i] != ';' && data[i] != ' ')) {
+            throw new BadRequestException(400, "Bad Request");
+        }
+        return size;
+    }
+
+    private byte[] consume(int start, int length, int next) {
+        byte[] body = new byte[length];
+        System.arraycopy(in.array(), start, body, 0, length);
+
+        compact(next);
+        return body;
+    }
+
+    /** Drops everything before the given index, keeping the start of a pipelined request. */
+    private void compact(int next) {
+        int remaining = in.position() - next;
+
+        System.arraycopy(in.array(), next, in.array(), 0, remaining);
+        in.position(remaining);
+    }
+
+    private void grow() throws IOException {
+        if (in.capacity() >= MAX_HEADER_SIZE + MAX_BODY_SIZE) {
+            throw new IOException("request too large");
+        }
+
+        ByteBuffer grown = ByteBuffer.allocate(Math.min(in.capacity() * 2, MAX_HEADER_SIZE + MAX_BODY_SIZE));
+        in.flip();
+        grown.put(in);
+        in = grown;
+    }
+
+    private boolean endsWith(byte[] suffix) {
+        int end = in.position();
+
+        // renderers may append a line break
+        while (end > headerEnd && Character.isWhitespace(in.get(end - 1))) {
+            end--;
+        }
+        if (end - headerEnd < suffix.length) {
+            return false;
+        }
+        return indexOf(suffix, end - suffix.length, end) >= 0;
+    }
+
+    private int indexOf(byte[] pattern, int from, int to) {
+        return indexOf(pattern, from, to, pattern.length);
+    }
+
+    /**
+     * @return index of the first occurrence of the first length bytes of pattern in [from, to), or -1
+     */
+    private int indexOf(byte[] pattern, int from, int to, int length) {
+        byte[] data = in.array();
+
+        outer:
+        for (int i = from; i <= to - length; i++) {
+            for (int j = 0; j < length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
@@ -10,6 +10,10 @@ import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
 
+/**
+ * @deprecated events are read by {@link DLNALastChangeParser}
+ */
+@Deprecated
 public class DLNAEventParser {
     private static final String ns = null;
 
@@ -1,62 +1,148 @@
 package com.connectsdk.service.upnp;
 
-import com.connectsdk.core.MediaInfo;
+import com.connectsdk.core.Log;
 import com.connectsdk.core.Util;
 import com.connectsdk.service.capability.MediaControl.PlayStateStatus;
 import com.connectsdk.service.capability.listeners.ResponseListener;
 import com.connectsdk.service.command.URLServiceSubscription;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 import org.xmlpull.v1.XmlPullParserException;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
-import java.io.UnsupportedEncodingException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.nio.charset.StandardCharsets;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
-
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receives the GENA event notifications of DLNA renderers. One selector thread accepts and frames any number of
+ * concurrent, kept alive NOTIFY connections; the event bodies are parsed and dispatched on the executor, in order per
+ * subscription.
+ *
+ * The event port is fixed, so all services share one instance. Each service registers the SIDs of its event
+ * subscriptions together with its own subscription list, and notifications are only delivered to the service the SID
+ * belongs to. Notifications without a SID go to the subscriptions of the server itself.
+ */
 public class DLNAHttpServer {
     final int port = 49291;
 
-    volatile ServerSocket welcomeSocket;
+    // connections without traffic for this long are closed
+    private static final long IDLE_TIMEOUT = 60 * 1000;
+
+    // how long (in milliseconds) and how many events of unknown SIDs are kept, see route()
+    private static final long UNROUTED_TIMEOUT = 5000;
+    private static final int MAX_UNROUTED_EVENTS = 8;
+    private static final int MAX_UNROUTED_SIDS = 32;
+
+    private static DLNAHttpServer instance;
+
+    volatile ServerSocketChannel serverChannel;
+    volatile Selector selector;
 
     volatile boolean running = false;
 
     CopyOnWriteArrayList<URLServiceSubscription<?>> subscriptions;
 
+    // subscriptions of the service each SID belongs to
+    private final Map<String, List<URLServiceSubscription<?>>> subscriptionsBySID =
+            new ConcurrentHashMap<String, List<URLServiceSubscription<?>>>();
+
+    // events waiting for dispatch, per SID; a queue exists while its events are dispatched
+    private final Map<String, ArrayDeque<byte[]>> pendingEvents = new HashMap<String, ArrayDeque<byte[]>>();
+
+    // events that arrived before their SID was registered
+    private final Map<String, List<byte[]>> unroutedEvents = new HashMap<String, List<byte[]>>();
+
+    private int users;
+
     public DLNAHttpServer() {
         subscriptions = new CopyOnWriteArrayList<URLServiceSubscription<?>>();
     }
 
+    /** @return the server shared by all DLNA services */
+    public static synchronized DLNAHttpServer getInstance() {
+        if (instance == null) {
+            instance = new DLNAHttpServer();
+        }
+        return instance;
+    }
+
+    /** Starts the server unless it is running already, and counts one more service using it. */
+    public synchronized void acquire() {
+        users++;
+        start();
+    }
+
+    /** Stops the server once the last service using it released it. */
+    public synchronized void release() {
+        if (users > 0 && --users == 0) {
+            stop();
+        }
+    }
+
+    /**
+     * Routes the notifications of an event subscription to the subscriptions of the service that holds it.
+     * Notifications that arrived just before, while the response to SUBSCRIBE was on its way, are delivered now.
+     */
+    public void register(String sid, List<URLServiceSubscription<?>> serviceSubscriptions) {
+        List<byte[]> events;
+
+        synchronized (unroutedEvents) {
+            subscriptionsBySID.put(sid, serviceSubscriptions);
+            events = unroutedEvents.remove(sid);
+        }
+
+        if (events != null) {
+            for (byte[] body : events) {
+                dispatch(sid, body);
+            }
+        }
+    }
+
+    public void unregister(String sid) {
+        subscriptionsBySID.remove(sid);
+    }
+
     public synchronized void start() {
         if (running) {
             return;
         }
 
-        running = true;
+        final ServerSocketChannel channel;
+        final Selector channelSelector;
 
         try {
-            welcomeSocket = new ServerSocket(this.port);
+            channel = ServerSocketChannel.open();
+            channel.socket().setReuseAddress(true);
+            channel.bind(new InetSocketAddress(this.port));
+            channel.configureBlocking(false);
+
+            channelSelector = Selector.open();
+            channel.register(channelSelector, SelectionKey.OP_ACCEPT);
         } catch (IOException ex) {
             ex.printStackTrace();
             return;
         }
 
+        serverChannel = channel;
+        selector = channelSelector;
+        running = true;
+
         Util.runInBackground(new Runnable() {
             @Override
             public void run() {
-                processRequests();
+                processRequests(channelSelector);
             }
         }, true);
     }
@@ -71,180 +157,316 @@ public class DLNAHttpServer {
         }
         subscriptions.clear();
 
-        if (welcomeSocket != null && !welcomeSocket.isClosed()) {
+        running = false;
+
+        if (serverChannel != null) {
             try {
-                welcomeSocket.close();
+                serverChannel.close();
             } catch (IOException ex) {
                 ex.printStackTrace();
             }
         }
+        if (selector != null) {
+            selector.wakeup();
+        }
 
-        welcomeSocket = null;
-        running = false;
+        serverChannel = null;
+        selector = null;
     }
 
-    private void processRequests() {
-        while (running) {
-            if (welcomeSocket == null || welcomeSocket.isClosed()) {
-                break;
+    private void processRequests(Selector channelSelector) {
+        try {
+            while (running && channelSelector == selector) {
+                channelSelector.select(IDLE_TIMEOUT / 2);
+
+                Iterator<SelectionKey> keys = channelSelector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+
+                        if (key.isAcceptable()) {
+                            accept(key);
+                        } else {
+                            handle(key);
+                        }
+                    } catch (IOException e) {
+                        close(key);
+                    }
+                }
+
+                closeIdleConnections(channelSelector);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            for (SelectionKey key : channelSelector.keys()) {
+                close(key);
             }
-            String body = null;
-            try (Socket connectionSocket = welcomeSocket.accept()) {
-                
 
-                int c = 0;
+            try {
+                channelSelector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
 
-                try (BufferedReader inFromClient = new BufferedReader(
-                        new InputStreamReader(connectionSocket.getInputStream(), StandardCharsets.UTF_8)) ){
-                    
+    private void accept(SelectionKey key) throws IOException {
+        SocketChannel channel = ((ServerSocketChannel) key.channel()).accept();
 
-                    StringBuilder sb = new StringBuilder();
+        if (channel == null) {
+            return;
+        }
 
-                    while ((c = inFromClient.read()) != -1) {
-                        sb.append((char) c);
+        channel.configureBlocking(false);
+        channel.register(key.selector(), SelectionKey.OP_READ, new DLNAEventConnection(channel));
+    }
 
-                        if (sb.toString().endsWith("\r\n\r\n"))
-                            break;
-                    }
-                    sb = new StringBuilder();
+    private void handle(SelectionKey key) throws IOException {
+        DLNAEventConnection connection = (DLNAEventConnection) key.attachment();
 
-                    while ((c = inFromClient.read()) != -1) {
-                        sb.append((char) c);
-                        body = sb.toString();
+        if (key.isWritable()) {
+            if (!connection.flush()) {
+                return;
+            }
+            if (connection.isCloseAfterWrite()) {
+                close(key);
+                return;
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
 
-                        if (body.endsWith("</e:propertyset>"))
-                            break;
-                    }
-                } catch (IOException ex) {
-                    ex.printStackTrace();
-                }
+        // requests that arrived while a response was pending are handled without reading
+        boolean open = !key.isReadable() || connection.read();
 
-                try (PrintWriter out = new PrintWriter(
-                        new OutputStreamWriter(connectionSocket.getOutputStream(), StandardCharsets.UTF_8))) {
-                    out.println("HTTP/1.1 200 OK");
-                    out.println("Connection: Close");
-                    out.println("Content-Length: 0");
-                    out.println();
-                    out.flush();
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        while (true) {
+            DLNAEventConnection.Request request;
 
-            if (body == null)
-                continue;
+            try {
+                request = connection.nextRequest();
+            } catch (DLNAEventConnection.BadRequestException e) {
+                connection.respond(e.status, e.getMessage(), false);
+                close(key);
+                return;
+            }
 
-            InputStream stream = null;
+            if (request == null) {
+                break;
+            }
 
-            stream = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+            boolean keepAlive = request.isKeepAlive() && !connection.isCloseAfterWrite();
 
-            JSONArray propertySet;
-            DLNANotifyParser parser = new DLNANotifyParser();
+            if (request.method.equals("NOTIFY")) {
+                dispatch(request.getHeader("sid"), request.body);
+                respond(key, connection, 200, "OK", keepAlive);
+            } else {
+                respond(key, connection, 405, "Method Not Allowed", keepAlive);
+            }
 
-            try {
-                propertySet = parser.parse(stream);
+            if (!keepAlive || !key.isValid() || (key.interestOps() & SelectionKey.OP_WRITE) != 0) {
+                // further requests are read once the response is out
+                return;
+            }
+        }
 
-                for (int i = 0; i < propertySet.length(); i++) {
-                    JSONObject property = propertySet.getJSONObject(i);
+        if (!open) {
+            close(key);
+        }
+    }
 
-                    if (property.has("LastChange")) {
-                        JSONObject lastChange = property.getJSONObject("LastChange");
-                        handleLastChange(lastChange);
-                    }
-                }
-            } catch (XmlPullParserException | IOException | JSONException e) {
-                e.printStackTrace();
-            } 
+    private void respond(SelectionKey key, DLNAEventConnection connection, int status, String reason,
+            boolean keepAlive) throws IOException {
+        if (!connection.respond(status, reason, keepAlive)) {
+            key.interestOps(SelectionKey.OP_WRITE);
+        } else if (!keepAlive) {
+            close(key);
         }
     }
 
-    private void handleLastChange(JSONObject lastChange) throws JSONException {
-        if (lastChange.has("InstanceID")) {
-            JSONArray instanceIDs = lastChange.getJSONArray("InstanceID");
+    private void closeIdleConnections(Selector channelSelector) {
+        long now = System.nanoTime();
 
-            for (int i = 0; i < instanceIDs.length(); i++) {
-                JSONArray events = instanceIDs.getJSONArray(i);
+        for (SelectionKey key : channelSelector.keys()) {
+            Object attachment = key.attachment();
 
-                for (int j = 0; j < events.length(); j++) {
-                    JSONObject entry = events.getJSONObject(j);
-                    handleEntry(entry);
-                }
+            if (attachment instanceof DLNAEventConnection
+                    && now - ((DLNAEventConnection) attachment).getLastActive() > TimeUnit.MILLISECONDS.toNanos(
+                            IDLE_TIMEOUT)) {
+                close(key);
             }
         }
     }
 
-    private void handleEntry(JSONObject entry) throws JSONException {
-        if (entry.has("TransportState")) {
-            String transportState = entry.getString("TransportState");
-            PlayStateStatus status = PlayStateStatus.convertTransportStateToPlayStateStatus(transportState);
-
-            for (URLServiceSubscription<?> sub : subscriptions) {
-                if (sub.getTarget().equalsIgnoreCase("playState")) {
-                    for (int j = 0; j < sub.getListeners().size(); j++) {
-                        @SuppressWarnings("unchecked")
-                        ResponseListener<Object> listener = (ResponseListener<Object>) sub.getListeners().get(j);
-                        Util.postSuccess(listener, status);
-                    }
-                }
+    private void close(SelectionKey key) {
+        key.cancel();
+
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // already closed
+        }
+    }
+
+    /**
+     * Parses and handles the event on the executor. Events of the same subscription are handled one after the other
+     * in the order they arrived, so that a later state is never overwritten by an earlier one.
+     */
+    private void dispatch(String sid, byte[] body) {
+        final String key = sid != null ? sid : "";
+
+        synchronized (pendingEvents) {
+            ArrayDeque<byte[]> queue = pendingEvents.get(key);
+
+            if (queue != null) {
+                queue.add(body);
+                return;
             }
+
+            queue = new ArrayDeque<byte[]>();
+            queue.add(body);
+            pendingEvents.put(key, queue);
         }
 
-        if ((entry.has("Volume") && !entry.has("channel"))
-                || (entry.has("Volume") && entry.getString("channel").equals("Master"))) {
-            int intVolume = entry.getInt("Volume");
-            float volume = (float) intVolume / 100;
-
-            for (URLServiceSubscription<?> sub : subscriptions) {
-                if (sub.getTarget().equalsIgnoreCase("volume")) {
-                    for (int j = 0; j < sub.getListeners().size(); j++) {
-                        @SuppressWarnings("unchecked")
-                        ResponseListener<Object> listener = (ResponseListener<Object>) sub.getListeners().get(j);
-                        Util.postSuccess(listener, volume);
-                    }
+        Util.runInBackground(new Runnable() {
+
+            @Override
+            public void run() {
+                handleEvents(key);
+            }
+        });
+    }
+
+    private void handleEvents(String sid) {
+        while (true) {
+            byte[] body;
+
+            synchronized (pendingEvents) {
+                body = pendingEvents.get(sid).poll();
+
+                if (body == null) {
+                    pendingEvents.remove(sid);
+                    return;
                 }
             }
+
+            List<URLServiceSubscription<?>> target = route(sid, body);
+            if (target != null) {
+                handleEvent(body, target);
+            }
         }
+    }
 
-        if ((entry.has("Mute") && !entry.has("channel"))
-                || (entry.has("Mute") && entry.getString("channel").equals("Master"))) {
-            String muteStatus = entry.getString("Mute");
-            boolean mute;
+    /**
+     * @return the subscriptions the event is for, or null if the SID is unknown; the event is then kept for a short
+     *         while in case the SID is about to be registered
+     */
+    private List<URLServiceSubscription<?>> route(final String sid, byte[] body) {
+        if (sid.isEmpty()) {
+            return subscriptions;
+        }
 
-            try {
-                mute = (Integer.parseInt(muteStatus) == 1);
-            } catch (NumberFormatException e) {
-                mute = Boolean.parseBoolean(muteStatus);
+        List<URLServiceSubscription<?>> target = subscriptionsBySID.get(sid);
+        if (target != null) {
+            return target;
+        }
+
+        synchronized (unroutedEvents) {
+            target = subscriptionsBySID.get(sid);
+            if (target != null) {
+                return target;
             }
 
-            for (URLServiceSubscription<?> sub : subscriptions) {
-                if (sub.getTarget().equalsIgnoreCase("mute")) {
-                    for (int j = 0; j < sub.getListeners().size(); j++) {
-                        @SuppressWarnings("unchecked")
-                        ResponseListener<Object> listener = (ResponseListener<Object>) sub.getListeners().get(j);
-                        Util.postSuccess(listener, mute);
-                    }
+            List<byte[]> events = unroutedEvents.get(sid);
+
+            if (events == null) {
+                if (unroutedEvents.size() >= MAX_UNROUTED_SIDS) {
+                    Log.w(Util.T, "Dropping event of unknown subscription {}", sid);
+                    return null;
                 }
+
+                final List<byte[]> newEvents = new ArrayList<byte[]>();
+                unroutedEvents.put(sid, newEvents);
+                events = newEvents;
+
+                Util.runInBackground(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        synchronized (unroutedEvents) {
+                            if (unroutedEvents.get(sid) == newEvents) {
+                                unroutedEvents.remove(sid);
+                                Log.w(Util.T, "Dropping events of unknown subscription {}", sid);
+                            }
+                        }
+                    }
+                }, UNROUTED_TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+
+            if (events.size() < MAX_UNROUTED_EVENTS) {
+                events.add(body);
             }
         }
+        return null;
+    }
 
-        if (entry.has("CurrentTrackMetaData")) {
+    private void handleEvent(byte[] body, final List<URLServiceSubscription<?>> subscriptions) {
+        try {
+            DLNALastChangeParser.parse(new ByteArrayInputStream(body), new DLNALastChangeParser.LastChangeListener() {
+
+                @Override
+                public void onTransportState(String transportState) {
+                    notifyListeners(subscriptions, "playState",
+                            PlayStateStatus.convertTransportStateToPlayStateStatus(transportState));
+                }
 
-            String trackMetaData = entry.getString("CurrentTrackMetaData");
+                @Override
+                public void onVolume(int volume) {
+                    notifyListeners(subscriptions, "volume", (float) volume / 100);
+                }
 
-            MediaInfo info = DLNAMediaInfoParser.getMediaInfo(trackMetaData);
+                @Override
+                public void onMute(boolean mute) {
+                    notifyListeners(subscriptions, "mute", mute);
+                }
 
-            for (URLServiceSubscription<?> sub : subscriptions) {
-                if (sub.getTarget().equalsIgnoreCase("info")) {
-                    for (int j = 0; j < sub.getListeners().size(); j++) {
-                        @SuppressWarnings("unchecked")
-                        ResponseListener<Object> listener = (ResponseListener<Object>) sub.getListeners().get(j);
-                        Util.postSuccess(listener, info);
+                @Override
+                public void onTrackMetaData(String metaData) {
+                    if (hasSubscription(subscriptions, "info")) {
+                        notifyListeners(subscriptions, "info", DLNAMediaInfoParser.getMediaInfo(metaData));
                     }
                 }
-            }
+            });
+        } catch (XmlPullParserException | IOException e) {
+            e.printStackTrace();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
 
+    private static boolean hasSubscription(List<URLServiceSubscription<?>> subscriptions, String target) {
+        for (URLServiceSubscription<?> sub : subscriptions) {
+            if (sub.getTarget().equalsIgnoreCase(target)) {
+                return true;
+            }
         }
+        return false;
+    }
 
+    private static void notifyListeners(List<URLServiceSubscription<?>> subscriptions, String target, Object value) {
+        for (URLServiceSubscription<?> sub : subscriptions) {
+            if (sub.getTarget().equalsIgnoreCase(target)) {
+                for (int j = 0; j < sub.getListeners().size(); j++) {
+                    @SuppressWarnings("unchecked")
+                    ResponseListener<Object> listener = (ResponseListener<Object>) sub.getListeners().get(j);
+                    Util.postSuccess(listener, value);
+                }
+            }
+        }
     }
 
     public int getPort() {
@@ -0,0 +1,144 @@
+package com.connectsdk.service.upnp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Reads the LastChange variables of a GENA property set and reports the changes of interest as they are parsed. The
+ * escaped LastChange document is read straight from the text of the outer parser, no intermediate trees are built.
+ * Each thread keeps its own pair of pull parsers.
+ */
+public final class DLNALastChangeParser {
+
+    /** Receives the changes of one notification in document order. */
+    public interface LastChangeListener {
+        void onTransportState(String transportState);
+
+        /** @param volume volume of the master channel */
+        void onVolume(int volume);
+
+        /** @param mute mute state of the master channel */
+        void onMute(boolean mute);
+
+        /** @param metaData DIDL-Lite description of the current track */
+        void onTrackMetaData(String metaData);
+    }
+
+    private static final ThreadLocal<XmlPullParser[]> parsers = new ThreadLocal<XmlPullParser[]>();
+
+    private DLNALastChangeParser() {
+    }
+
+    /**
+     * Parses a property set and reports the changes of all LastChange variables in it. The stream is closed.
+     */
+    public static void parse(InputStream in, LastChangeListener listener) throws XmlPullParserException,
+            IOException {
+        XmlPullParser[] pair = getParsers();
+        XmlPullParser parser = pair[0];
+
+        try {
+            parser.setInput(in, null);
+
+            int event = parser.next();
+            while (event != XmlPullParser.END_DOCUMENT) {
+                if (event == XmlPullParser.START_TAG && isNamed(parser, "LastChange")) {
+                    if (parser.next() == XmlPullParser.TEXT) {
+                        parseLastChange(pair[1], parser.getText(), listener);
+                    }
+                }
+                event = parser.next();
+            }
+        } finally {
+            in.close();
+            parser.setInput((Reader) null);
+        }
+    }
+
+    private static void parseLastChange(XmlPullParser parser, String lastChange, LastChangeListener listener)
+            throws XmlPullParserException, IOException {
+        try {
+            parser.setInput(new StringReader(lastChange));
+
+            // changes are only taken from the children of InstanceID, QueueID and others are skipped
+            int depth = 0;
+            boolean inInstance = false;
+
+            int event = parser.next();
+            while (event != XmlPullParser.END_DOCUMENT) {
+                if (event == XmlPullParser.START_TAG) {
+                    depth++;
+
+                    if (depth == 2) {
+                        inInstance = isNamed(parser, "InstanceID");
+                    } else if (depth == 3 && inInstance) {
+                        readEntry(parser, listener);
+                    }
+                } else if (event == XmlPullParser.END_TAG) {
+                    depth--;
+                }
+                event = parser.next();
+            }
+        } finally {
+            parser.setInput((Reader) null);
+        }
+    }
+
+    private static void readEntry(XmlPullParser parser, LastChangeListener listener) {
+        String name = parser.getName();
+        String value = parser.getAttributeValue(null, "val");
+
+        if (value == null) {
+            return;
+        }
+
+        if (name.equals("TransportState")) {
+            listener.onTransportState(value);
+        } else if (name.equals("Volume")) {
+            if (isMasterChannel(parser)) {
+                try {
+                    listener.onVolume(Integer.parseInt(value.trim()));
+                } catch (NumberFormatException e) {
+                    // not a volume change then
+                }
+            }
+        } else if (name.equals("Mute")) {
+            if (isMasterChannel(parser)) {
+                String mute = value.trim();
+                listener.onMute(mute.equals("1") || mute.equalsIgnoreCase("true"));
+            }
+        } else if (name.equals("CurrentTrackMetaData")) {
+            listener.onTrackMetaData(value);
+        }
+    }
+
+    private static boolean isMasterChannel(XmlPullParser parser) {
+        String channel = parser.getAttributeValue(null, "channel");
+
+        return channel == null || channel.equals("Master");
+    }
+
+    /** Compares the local name, elements may carry a namespace prefix. */
+    private static boolean isNamed(XmlPullParser parser, String name) {
+        String tag = parser.getName();
+        int start = tag.indexOf(':') + 1;
+
+        return tag.length() - start == name.length() && tag.startsWith(name, start);
+    }
+
+    private static XmlPullParser[] getParsers() throws XmlPullParserException {
+        XmlPullParser[] pair = parsers.get();
+
+        if (pair == null) {
+            pair = new XmlPullParser[] { DLNAResponseParser.getFactory().newPullParser(),
+                    DLNAResponseParser.getFactory().newPullParser() };
+            parsers.set(pair);
+        }
+        return pair;
+    }
+}
@@ -0,0 +1,255 @@
+package com.connectsdk.service.upnp;
+
+import java.util.Map;
+
+/**
+ * Writes SOAP action envelopes and DIDL-Lite metadata straight into a reused per-thread buffer. The fixed parts of
+ * both documents are kept as prebuilt strings, only names and values are escaped and appended per call. The output
+ * is the same as serializing the equivalent DOM document with the default Transformer, which DLNAService did before.
+ */
+public final class DLNAMessageBuilder {
+
+    private static final String ENVELOPE_START = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\" "
+            + "s:encodingStyle=\"http://schemas.xmlsoap.org/soap/encoding/\"><s:Body>";
+    private static final String ENVELOPE_END = "</s:Body></s:Envelope>";
+
+    private static final String DIDL_START = "<DIDL-Lite xmlns=\"urn:schemas-upnp-org:metadata-1-0/DIDL-Lite/\" "
+            + "xmlns:dc=\"http://purl.org/dc/elements/1.1/\" xmlns:sec=\"http://www.sec.co.kr/\" "
+            + "xmlns:upnp=\"urn:schemas-upnp-org:metadata-1-0/upnp/\">"
+            + "<item id=\"1000\" parentID=\"0\" restricted=\"0\">";
+    private static final String DIDL_END = "</item></DIDL-Lite>";
+
+    private static final int MAX_CACHED_CAPACITY = 16 * 1024;
+
+    private static final ThreadLocal<StringBuilder> buffers = new ThreadLocal<StringBuilder>() {
+
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(1024);
+        }
+    };
+
+    private DLNAMessageBuilder() {
+    }
+
+    /**
+     * @param serviceURN service type the action belongs to
+     * @param method name of the action
+     * @param instanceId value of the InstanceID argument, or null to leave it out
+     * @param params further arguments in order, or null
+     * @return the SOAP envelope of the action
+     */
+    public static String getMessageXml(String serviceURN, String method, String instanceId,
+            Map<String, String> params) {
+        StringBuilder sb = getBuffer();
+
+        sb.append(ENVELOPE_START);
+        sb.append("<u:").append(method).append(" xmlns:u=\"");
+        appendAttribute(sb, serviceURN);
+        sb.append('"');
+
+        if (instanceId == null && (params == null || params.isEmpty())) {
+            sb.append("/>");
+        } else {
+            sb.append('>');
+
+            if (instanceId != null) {
+                appendElement(sb, "InstanceID", instanceId);
+            }
+
+            if (params != null) {
+                for (Map.Entry<String, String> entry : params.entrySet()) {
+                    appendElement(sb, entry.getKey(), entry.getValue());
+                }
+            }
+
+            sb.append("</u:").append(method).append('>');
+        }
+
+        sb.append(ENVELOPE_END);
+
+        return release(sb);
+    }
+
+    /**
+     * Builds the DIDL-Lite description of a media item. URLs have to be encoded already.
+     *
+     * @param hasSubtitle whether to describe a subtitle, the subtitle arguments are ignored otherwise
+     */
+    public static String getMetadata(String title, String description, String mediaURL, String mime,
+            String iconURL, String objectClass, boolean hasSubtitle, String subtitleURL, String subtitleMimeType,
+            String subtitleType) {
+        StringBuilder sb = getBuffer();
+
+        sb.append(DIDL_START);
+        appendElement(sb, "dc:title", title);
+        appendElement(sb, "dc:description", description);
+
+        sb.append("<res");
+        if (hasSubtitle) {
+            sb.append(" xmlns:pv=\"http://www.pv.com/pvns/\"");
+        }
+        sb.append(" protocolInfo=\"http-get:*:");
+        appendAttribute(sb, mime);
+        sb.append(":DLNA.ORG_OP=01\"");
+        if (hasSubtitle) {
+            sb.append(" pv:subtitleFileType=\"");
+            appendAttribute(sb, subtitleType);
+            sb.append("\" pv:subtitleFileUri=\"");
+            appendAttribute(sb, subtitleURL);
+            sb.append('"');
+        }
+        appendContent(sb, "res", mediaURL);
+
+        appendElement(sb, "upnp:albumArtURI", iconURL);
+        appendElement(sb, "upnp:class", objectClass);
+
+        if (hasSubtitle) {
+            sb.append("<res protocolInfo=\"http-get:*:smi/caption\"");
+            appendContent(sb, "res", subtitleURL);
+
+            sb.append("<res protocolInfo=\"http-get:*:");
+            appendAttribute(sb, subtitleMimeType);
+            sb.append(":\"");
+            appendContent(sb, "res", subtitleURL);
+
+            sb.append("<sec:CaptionInfoEx sec:type=\"");
+            appendAttribute(sb, subtitleType);
+            sb.append('"');
+            appendContent(sb, "sec:CaptionInfoEx", subtitleURL);
+
+            sb.append("<sec:CaptionInfo sec:type=\"");
+            appendAttribute(sb, subtitleType);
+            sb.append('"');
+            appendContent(sb, "sec:CaptionInfo", subtitleURL);
+        }
+
+        sb.append(DIDL_END);
+
+        return release(sb);
+    }
+
+    private static StringBuilder getBuffer() {
+        StringBuilder sb = buffers.get();
+        sb.setLength(0);
+
+        return sb;
+    }
+
+    private static String release(StringBuilder sb) {
+        String result = sb.toString();
+
+        // don't keep a buffer that grew for an exceptionally large document
+        if (sb.capacity() > MAX_CACHED_CAPACITY) {
+            buffers.remove();
+        }
+        return result;
+    }
+
+    private static void appendElement(StringBuilder sb, String name, String text) {
+        sb.append('<').append(name);
+        appendContent(sb, name, text);
+    }
+
+    /** Closes the start tag and appends the text and end tag, or closes an empty element. */
+    private static void appendContent(StringBuilder sb, String name, String text) {
+        if (text == null || text.isEmpty()) {
+            sb.append("/>");
+            return;
+        }
+
+        sb.append('>');
+        appendText(sb, text);
+        sb.append("</").append(name).append('>');
+    }
+
+    static void appendText(StringBuilder sb, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            switch (c) {
+            case '&':
+                sb.append("&amp;");
+                break;
+            case '<':
+                sb.append("&lt;");
+                break;
+            case '>':
+                sb.append("&gt;");
+                break;
+            case '\n':
+            case '\t':
+                sb.append(c);
+                break;
+            default:
+                // text escapes the C1 controls as well, attribute values don't
+                if (c < 0x20 || (c >= 0x7F && c <= 0x9F)) {
+                    appendCharReference(sb, c);
+                } else if (Character.isHighSurrogate(c)) {
+                    i = appendSurrogate(sb, text, i);
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+    }
+
+    static void appendAttribute(StringBuilder sb, String value) {
+        if (value == null) {
+            return;
+        }
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            switch (c) {
+            case '&':
+                sb.append("&amp;");
+                break;
+            case '<':
+                sb.append("&lt;");
+                break;
+            case '>':
+                sb.append("&gt;");
+                break;
+            case '"':
+                sb.append("&quot;");
+                break;
+            case '\n':
+                sb.append("&#10;");
+                break;
+            case '\t':
+                sb.append("&#9;");
+                break;
+            default:
+                if (c < 0x20) {
+                    appendCharReference(sb, c);
+                } else if (Character.isHighSurrogate(c)) {
+                    i = appendSurrogate(sb, value, i);
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+    }
+
+    private static void appendCharReference(StringBuilder sb, int c) {
+        sb.append("&#").append(c).append(';');
+    }
+
+    /**
+     * Characters outside of the BMP are written as references.
+     *
+     * @return index of the last char consumed
+     */
+    private static int appendSurrogate(StringBuilder sb, String s, int i) {
+        if (i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+            appendCharReference(sb, Character.toCodePoint(s.charAt(i), s.charAt(i + 1)));
+            return i + 1;
+        }
+
+        sb.append(s.charAt(i));
+        return i;
+    }
+}
@@ -13,6 +13,10 @@ import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
 
+/**
+ * @deprecated events are read by {@link DLNALastChangeParser}
+ */
+@Deprecated
 public class DLNANotifyParser {
     private static final String ns = null;
 
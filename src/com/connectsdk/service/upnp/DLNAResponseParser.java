@@ -0,0 +1,229 @@
+package com.connectsdk.service.upnp;
+
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import com.connectsdk.service.capability.MediaControl.PlayStateStatus;
+
+/**
+ * Decodes the SOAP responses of the AVTransport and RenderingControl queries. Every response is scanned once and all
+ * arguments of interest are taken in the same pass. Each thread keeps its own pull parser, so no parser factory is
+ * looked up per response.
+ */
+public final class DLNAResponseParser {
+
+    /** Result of GetPositionInfo. Missing arguments are returned as empty strings. */
+    public static final class PositionInfo {
+        private static final String[] KEYS = { "Track", "TrackDuration", "TrackMetaData", "TrackURI", "RelTime",
+                "AbsTime" };
+
+        private final String[] values;
+
+        PositionInfo(String[] values) {
+            this.values = values;
+        }
+
+        public String getTrack() {
+            return values[0];
+        }
+
+        public String getTrackDuration() {
+            return values[1];
+        }
+
+        /** @return the DIDL-Lite description of the current track */
+        public String getTrackMetaData() {
+            return values[2];
+        }
+
+        public String getTrackURI() {
+            return values[3];
+        }
+
+        public String getRelTime() {
+            return values[4];
+        }
+
+        public String getAbsTime() {
+            return values[5];
+        }
+
+        /** @return mime type from the protocol info of the track metadata, without parsing the whole DIDL-Lite */
+        public String getMimeType() {
+            return DLNAMediaInfoParser.getMimeType(getTrackMetaData());
+        }
+    }
+
+    /** Result of GetTransportInfo. */
+    public static final class TransportInfo {
+        private static final String[] KEYS = { "CurrentTransportState", "CurrentTransportStatus", "CurrentSpeed" };
+
+        private final String[] values;
+
+        TransportInfo(String[] values) {
+            this.values = values;
+        }
+
+        public String getTransportState() {
+            return values[0];
+        }
+
+        public String getTransportStatus() {
+            return values[1];
+        }
+
+        public String getSpeed() {
+            return values[2];
+        }
+
+        public PlayStateStatus getPlayState() {
+            return PlayStateStatus.convertTransportStateToPlayStateStatus(getTransportState());
+        }
+    }
+
+    /** Result of GetVolume or GetMute. */
+    public static final class VolumeInfo {
+        private static final String[] KEYS = { "CurrentVolume", "CurrentMute" };
+
+        private final String[] values;
+
+        VolumeInfo(String[] values) {
+            this.values = values;
+        }
+
+        /** @return volume in the range the renderer reports, usually 0 to 100, or -1 if missing */
+        public int getVolume() {
+            String volume = values[0].trim();
+
+            try {
+                return volume.isEmpty() ? -1 : Integer.parseInt(volume);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        /** @return true if the renderer reports the mute state as "1" or "true" */
+        public boolean isMute() {
+            String mute = values[1].trim();
+
+            return mute.equals("1") || mute.equalsIgnoreCase("true");
+        }
+    }
+
+    private static XmlPullParserFactory factory;
+
+    private static final ThreadLocal<XmlPullParser> parsers = new ThreadLocal<XmlPullParser>();
+
+    private DLNAResponseParser() {
+    }
+
+    public static PositionInfo parsePositionInfo(String response) {
+        return new PositionInfo(parse(response, PositionInfo.KEYS));
+    }
+
+    public static TransportInfo parseTransportInfo(String response) {
+        return new TransportInfo(parse(response, TransportInfo.KEYS));
+    }
+
+    public static VolumeInfo parseVolumeInfo(String response) {
+        return new VolumeInfo(parse(response, VolumeInfo.KEYS));
+    }
+
+    /**
+     * Scans the response once and takes the text of the first element named after each key. The scan stops as soon
+     * as all keys are found.
+     *
+     * @return values in the order of the keys, empty strings for missing elements
+     */
+    static String[] parse(String response, String[] keys) {
+        String[] values = new String[keys.length];
+        int missing = keys.length;
+
+        if (response != null) {
+            XmlPullParser parser = null;
+
+            try {
+                parser = getParser();
+                parser.setInput(new StringReader(response));
+
+                int current = -1;
+                int event = parser.next();
+
+                while (event != XmlPullParser.END_DOCUMENT && missing > 0) {
+                    if (event == XmlPullParser.START_TAG) {
+                        current = indexOf(keys, parser.getName());
+                    } else if (event == XmlPullParser.TEXT) {
+                        if (current >= 0 && values[current] == null) {
+                            values[current] = parser.getText();
+                            missing--;
+                        }
+                    } else if (event == XmlPullParser.END_TAG) {
+                        current = -1;
+                    }
+                    event = parser.next();
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                release(parser);
+            }
+        }
+
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                values[i] = "";
+            }
+        }
+        return values;
+    }
+
+    private static int indexOf(String[] keys, String name) {
+        // elements may carry a namespace prefix
+        int colon = name.indexOf(':');
+        int start = colon + 1;
+        int length = name.length() - start;
+
+        for (int i = 0; i < keys.length; i++) {
+            String key = keys[i];
+
+            if (key.length() == length && name.regionMatches(start, key, 0, length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static XmlPullParser getParser() throws XmlPullParserException {
+        XmlPullParser parser = parsers.get();
+
+        if (parser == null) {
+            parser = getFactory().newPullParser();
+            parsers.set(parser);
+        }
+        return parser;
+    }
+
+    static synchronized XmlPullParserFactory getFactory() throws XmlPullParserException {
+        if (factory == null) {
+            factory = XmlPullParserFactory.newInstance();
+        }
+        return factory;
+    }
+
+    private static void release(XmlPullParser parser) {
+        if (parser == null) {
+            return;
+        }
+
+        try {
+            // don't hold on to the last response
+            parser.setInput((Reader) null);
+        } catch (XmlPullParserException e) {
+            parsers.remove();
+        }
+    }
+}
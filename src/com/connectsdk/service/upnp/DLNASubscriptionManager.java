@@ -0,0 +1,518 @@
+package com.connectsdk.service.upnp;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.connectsdk.core.Log;
+import com.connectsdk.core.Util;
+import com.connectsdk.etc.helper.HttpConnection;
+import com.connectsdk.service.capability.listeners.ResponseListener;
+import com.connectsdk.service.command.ServiceCommandError;
+
+/**
+ * Keeps the GENA event subscriptions of all DLNA services alive. Each subscription is renewed shortly before the
+ * timeout the device granted runs out; the requests run on the executor, so devices are renewed in parallel and a
+ * slow device doesn't hold up the others.
+ *
+ * A renewal that fails with 412 Precondition Failed means the device dropped the SID, the subscription is then made
+ * again from scratch. Other failures are retried until the subscription expires, after that it is made from scratch
+ * as well.
+ *
+ * The services of one device are subscribed concurrently, so events flow after about one round trip. At most
+ * MAX_REQUESTS_PER_DEVICE requests are sent to a device at the same time, further requests wait for one of them.
+ */
+public class DLNASubscriptionManager {
+
+    /** Timeout (in seconds) requested for new subscriptions and renewals. */
+    public static final int DEFAULT_TIMEOUT = 300;
+
+    /** Returned by parseTimeout() for subscriptions that never expire. */
+    static final long INFINITE = -1;
+
+    // renewals are sent this long (in milliseconds) before expiry, or half way through shorter subscriptions
+    static final long RENEWAL_MARGIN = 60 * 1000;
+    // delay (in milliseconds) before retrying a failed renewal or subscription, doubled up to MAX_RETRY_DELAY
+    static final long RETRY_DELAY = 10 * 1000;
+    static final long MAX_RETRY_DELAY = DEFAULT_TIMEOUT * 1000;
+
+    // concurrent requests to one device, renderers often serve only a few connections at once
+    static final int MAX_REQUESTS_PER_DEVICE = 4;
+
+    private static final int PRECONDITION_FAILED = 412;
+
+    private static DLNASubscriptionManager instance;
+
+    // requests in progress and waiting, per device address
+    private final Map<String, Device> devices = new HashMap<String, Device>();
+
+    /** Told when the SID of a subscription becomes valid or invalid, e.g. to route its events. */
+    public interface SubscriptionListener {
+        void onSubscribed(Subscription subscription, String sid);
+
+        /** The SID is not valid anymore: the subscription expired, was dropped by the device or cancelled. */
+        void onExpired(Subscription subscription, String sid);
+    }
+
+    /** Event subscription of one service of a device. */
+    public static final class Subscription {
+        final URI eventURL;
+        final String callbackURL;
+        final SubscriptionListener listener;
+
+        // guarded by this
+        private boolean active = true;
+        private boolean running;
+        private String sid;
+        private long expiry;
+        private long retryDelay = RETRY_DELAY;
+        private ScheduledFuture<?> next;
+        // batch waiting for the outcome of the first attempt
+        private Batch batch;
+
+        Subscription(URI eventURL, String callbackURL, SubscriptionListener listener) {
+            this.eventURL = eventURL;
+            this.callbackURL = callbackURL;
+            this.listener = listener;
+        }
+
+        public URI getEventURL() {
+            return eventURL;
+        }
+
+        /** @return the current SID, or null while not subscribed */
+        public synchronized String getSID() {
+            return sid;
+        }
+
+        public synchronized boolean isActive() {
+            return active;
+        }
+    }
+
+    /** Subscriptions made together, the completion listener is told once all of them got a first answer. */
+    private static final class Batch {
+        final ResponseListener<Object> completion;
+        int remaining;
+        int failed;
+
+        Batch(ResponseListener<Object> completion, int remaining) {
+            this.completion = completion;
+            this.remaining = remaining;
+        }
+    }
+
+    private static final class Device {
+        final ArrayDeque<Runnable> waiting = new ArrayDeque<Runnable>();
+        int running;
+    }
+
+    DLNASubscriptionManager() {
+    }
+
+    /** @return the manager shared by all DLNA services */
+    public static synchronized DLNASubscriptionManager getInstance() {
+        if (instance == null) {
+            instance = new DLNASubscriptionManager();
+        }
+        return instance;
+    }
+
+    /**
+     * Subscribes to the events of a service in the background and keeps the subscription alive until it is
+     * cancelled with unsubscribe().
+     *
+     * @param eventURL event subscription URL of the service
+     * @param callbackURL URL the device sends the events to
+     */
+    public Subscription subscribe(URI eventURL, String callbackURL, SubscriptionListener listener) {
+        Subscription subscription = new Subscription(eventURL, callbackURL, listener);
+
+        synchronized (subscription) {
+            execute(subscription);
+        }
+        return subscription;
+    }
+
+    /**
+     * Subscribes to the events of several services at once, see subscribe(). The completion listener gets
+     * onSuccess() once all services are subscribed, or onError() once every first attempt is done and some failed.
+     *
+     * @param callbackURLs URL the device sends the events to, per event subscription URL
+     * @return the subscriptions in the order of the map
+     */
+    public List<Subscription> subscribe(Map<URI, String> callbackURLs, SubscriptionListener listener,
+            ResponseListener<Object> completion) {
+        List<Subscription> subscriptions = new ArrayList<Subscription>(callbackURLs.size());
+
+        if (callbackURLs.isEmpty()) {
+            Util.postSuccess(completion, null);
+            return subscriptions;
+        }
+
+        Batch batch = new Batch(completion, callbackURLs.size());
+
+        for (Map.Entry<URI, String> entry : callbackURLs.entrySet()) {
+            Subscription subscription = new Subscription(entry.getKey(), entry.getValue(), listener);
+
+            synchronized (subscription) {
+                subscription.batch = batch;
+                execute(subscription);
+            }
+            subscriptions.add(subscription);
+        }
+        return subscriptions;
+    }
+
+    /** Renews the subscription right away, e.g. after the device came back. */
+    public void renew(Subscription subscription) {
+        synchronized (subscription) {
+            if (!subscription.active || subscription.running) {
+                return;
+            }
+
+            cancelNext(subscription);
+            execute(subscription);
+        }
+    }
+
+    /** Cancels the renewals and unsubscribes from the device in the background. */
+    public void unsubscribe(final Subscription subscription) {
+        final String sid;
+
+        synchronized (subscription) {
+            if (!subscription.active) {
+                return;
+            }
+
+            subscription.active = false;
+            cancelNext(subscription);
+
+            sid = subscription.sid;
+            subscription.sid = null;
+        }
+
+        if (sid == null) {
+            // a subscription still in progress is cancelled once it completes
+            return;
+        }
+
+        subscription.listener.onExpired(subscription, sid);
+
+        submit(subscription.eventURL, new Runnable() {
+
+            @Override
+            public void run() {
+                sendUnsubscribe(subscription, sid);
+            }
+        });
+    }
+
+    /** Runs the next request of the subscription on the executor, the caller holds the lock. */
+    private void execute(final Subscription subscription) {
+        subscription.running = true;
+
+        submit(subscription.eventURL, new Runnable() {
+
+            @Override
+            public void run() {
+                process(subscription);
+            }
+        });
+    }
+
+    /** Runs the request on the executor, or queues it while the device has enough requests in progress. */
+    private void submit(URI eventURL, final Runnable request) {
+        final String address = eventURL.getHost() + ":" + eventURL.getPort();
+
+        synchronized (devices) {
+            Device device = devices.get(address);
+
+            if (device == null) {
+                device = new Device();
+                devices.put(address, device);
+            }
+            if (device.running >= MAX_REQUESTS_PER_DEVICE) {
+                device.waiting.add(request);
+                return;
+            }
+            device.running++;
+        }
+
+        Util.runInBackground(new Runnable() {
+
+            @Override
+            public void run() {
+                Runnable next = request;
+
+                // the thread carries on with the requests that waited for it
+                while (next != null) {
+                    try {
+                        next.run();
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                    next = finished(address);
+                }
+            }
+        });
+    }
+
+    /** @return the next waiting request of the device, or null if there is none */
+    private Runnable finished(String address) {
+        synchronized (devices) {
+            Device device = devices.get(address);
+            Runnable next = device.waiting.poll();
+
+            if (next == null && --device.running == 0) {
+                devices.remove(address);
+            }
+            return next;
+        }
+    }
+
+    private void schedule(final Subscription subscription, long delay) {
+        subscription.next = Util.runInBackground(new Runnable() {
+
+            @Override
+            public void run() {
+                synchronized (subscription) {
+                    subscription.next = null;
+
+                    if (!subscription.active || subscription.running) {
+                        return;
+                    }
+                    execute(subscription);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelNext(Subscription subscription) {
+        if (subscription.next != null) {
+            subscription.next.cancel(false);
+            subscription.next = null;
+        }
+    }
+
+    /** Renews the subscription if it has a SID, or subscribes from scratch. */
+    private void process(Subscription subscription) {
+        String sid;
+
+        synchronized (subscription) {
+            sid = subscription.sid;
+        }
+
+        if (sid != null) {
+            renew(subscription, sid);
+        } else {
+            subscribe(subscription);
+        }
+    }
+
+    private void subscribe(Subscription subscription) {
+        String sid = null;
+        long timeout = 0;
+
+        try {
+            HttpConnection connection = HttpConnection.newSubscriptionInstance(subscription.eventURL);
+            connection.setMethod(HttpConnection.Method.SUBSCRIBE);
+            connection.setHeader("CALLBACK", "<" + subscription.callbackURL + ">");
+            connection.setHeader("NT", "upnp:event");
+            connection.setHeader("TIMEOUT", "Second-" + DEFAULT_TIMEOUT);
+            connection.setHeader("Connection", "close");
+            connection.setHeader("Content-length", "0");
+            connection.setHeader("USER-AGENT", "Android UPnp/1.1 ConnectSDK");
+            connection.execute();
+
+            if (connection.getResponseCode() == 200) {
+                sid = connection.getResponseHeader("SID");
+                timeout = parseTimeout(connection.getResponseHeader("TIMEOUT"));
+            } else {
+                Log.w(Util.T, "Subscription to {} failed: {}", subscription.eventURL, connection.getResponseCode());
+            }
+        } catch (IOException e) {
+            Log.w(Util.T, "Subscription to {} failed: {}", subscription.eventURL, e.getMessage());
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+
+        Batch batch;
+        boolean subscribed = false;
+
+        synchronized (subscription) {
+            subscription.running = false;
+            batch = subscription.batch;
+            subscription.batch = null;
+
+            if (sid == null) {
+                if (subscription.active) {
+                    // keep trying with backoff, a batch still learns that the first attempt failed
+                    retry(subscription);
+                }
+            } else if (subscription.active) {
+                subscription.sid = sid;
+                subscription.retryDelay = RETRY_DELAY;
+                scheduleRenewal(subscription, timeout);
+
+                // under the lock, so a concurrent unsubscribe() reports the expiry after this
+                subscription.listener.onSubscribed(subscription, sid);
+                subscribed = true;
+            }
+        }
+
+        if (sid != null && !subscribed) {
+            // cancelled while subscribing
+            sendUnsubscribe(subscription, sid);
+        }
+
+        if (batch != null) {
+            complete(batch, subscribed);
+        }
+    }
+
+    private static void complete(Batch batch, boolean subscribed) {
+        int remaining;
+        int failed;
+
+        synchronized (batch) {
+            if (!subscribed) {
+                batch.failed++;
+            }
+            remaining = --batch.remaining;
+            failed = batch.failed;
+        }
+
+        if (remaining > 0) {
+            return;
+        }
+
+        if (failed == 0) {
+            Util.postSuccess(batch.completion, null);
+        } else {
+            Util.postError(batch.completion, new ServiceCommandError(0, failed
+                    + " event subscription(s) failed", null));
+        }
+    }
+
+    private void renew(Subscription subscription, String sid) {
+        int code = 0;
+        long timeout = 0;
+
+        try {
+            HttpConnection connection = HttpConnection.newSubscriptionInstance(subscription.eventURL);
+            connection.setMethod(HttpConnection.Method.SUBSCRIBE);
+            connection.setHeader("SID", sid);
+            connection.setHeader("TIMEOUT", "Second-" + DEFAULT_TIMEOUT);
+            connection.setHeader("Connection", "close");
+            connection.setHeader("Content-length", "0");
+            connection.execute();
+
+            code = connection.getResponseCode();
+            timeout = parseTimeout(connection.getResponseHeader("TIMEOUT"));
+        } catch (IOException e) {
+            Log.w(Util.T, "Renewal of {} failed: {}", sid, e.getMessage());
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+
+        boolean expired = false;
+
+        synchronized (subscription) {
+            subscription.running = false;
+
+            if (!subscription.active) {
+                return;
+            }
+
+            if (code == 200) {
+                subscription.retryDelay = RETRY_DELAY;
+                scheduleRenewal(subscription, timeout);
+                return;
+            }
+
+            if (code == PRECONDITION_FAILED || subscription.expiry != INFINITE
+                    && System.currentTimeMillis() + subscription.retryDelay >= subscription.expiry) {
+                // the SID is gone or about to be, start over
+                Log.w(Util.T, "Subscription {} expired: {}", sid, code);
+
+                expired = true;
+                subscription.sid = null;
+                execute(subscription);
+            } else {
+                Log.w(Util.T, "Renewal of {} failed: {}", sid, code);
+                retry(subscription);
+            }
+        }
+
+        if (expired) {
+            subscription.listener.onExpired(subscription, sid);
+        }
+    }
+
+    private void sendUnsubscribe(Subscription subscription, String sid) {
+        try {
+            HttpConnection connection = HttpConnection.newSubscriptionInstance(subscription.eventURL);
+            connection.setMethod(HttpConnection.Method.UNSUBSCRIBE);
+            connection.setHeader("SID", sid);
+            connection.setHeader("Connection", "close");
+            connection.setHeader("Content-length", "0");
+            connection.execute();
+        } catch (IOException e) {
+            Log.w(Util.T, "Unsubscribing {} failed: {}", sid, e.getMessage());
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Schedules the renewal of a subscription granted for the given timeout, the caller holds the lock. */
+    private void scheduleRenewal(Subscription subscription, long timeout) {
+        if (timeout == INFINITE) {
+            subscription.expiry = INFINITE;
+            return;
+        }
+
+        long millis = timeout * 1000;
+
+        subscription.expiry = System.currentTimeMillis() + millis;
+        schedule(subscription, millis - Math.min(RENEWAL_MARGIN, millis / 2));
+    }
+
+    private void retry(Subscription subscription) {
+        schedule(subscription, subscription.retryDelay);
+        subscription.retryDelay = Math.min(subscription.retryDelay * 2, MAX_RETRY_DELAY);
+    }
+
+    /**
+     * @param header value of the TIMEOUT header, "Second-" followed by the number of seconds or "infinite"
+     * @return the timeout in seconds, {@link #INFINITE}, or the requested timeout if the header is missing or invalid
+     */
+    static long parseTimeout(String header) {
+        if (header == null) {
+            return DEFAULT_TIMEOUT;
+        }
+
+        String value = header.trim();
+        if (!value.regionMatches(true, 0, "Second-", 0, 7)) {
+            return DEFAULT_TIMEOUT;
+        }
+
+        value = value.substring(7);
+        if (value.equalsIgnoreCase("infinite")) {
+            return INFINITE;
+        }
+
+        try {
+            long timeout = Long.parseLong(value);
+            return timeout > 0 ? timeout : DEFAULT_TIMEOUT;
+        } catch (NumberFormatException e) {
+            return DEFAULT_TIMEOUT;
+        }
+    }
+}
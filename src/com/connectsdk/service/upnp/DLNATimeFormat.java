@@ -0,0 +1,179 @@
+package com.connectsdk.service.upnp;
+
+/**
+ * Parses and formats UPnP AVTransport durations of the form H+:MM:SS[.F+] or H+:MM:SS[.F0/F1]. Both directions work on
+ * the characters directly and allocate nothing, they run on every position poll.
+ */
+public final class DLNATimeFormat {
+
+    /** Returned by the parse methods for text that is not a valid duration, e.g. "NOT_IMPLEMENTED". */
+    public static final long INVALID = -1;
+
+    // more hour digits would overflow the milliseconds
+    private static final int MAX_HOUR_DIGITS = 9;
+    // digits of a fraction beyond milliseconds are dropped
+    private static final int MAX_FRACTION_DIGITS = 9;
+
+    private DLNATimeFormat() {
+    }
+
+    /**
+     * @return the duration in milliseconds, or {@link #INVALID}
+     */
+    public static long parse(CharSequence text) {
+        if (text == null) {
+            return INVALID;
+        }
+        return parse(text, 0, text.length());
+    }
+
+    /**
+     * Parses the duration between start (inclusive) and end (exclusive). Surrounding whitespace and a leading "+"
+     * are ignored, fractions are truncated to milliseconds.
+     *
+     * @return the duration in milliseconds, or {@link #INVALID}
+     */
+    public static long parse(CharSequence text, int start, int end) {
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        if (start < end && text.charAt(start) == '+') {
+            start++;
+        }
+
+        // hours
+        int i = start;
+        long hours = 0;
+        while (i < end && isDigit(text.charAt(i))) {
+            hours = hours * 10 + (text.charAt(i) - '0');
+            i++;
+        }
+        if (i == start || i - start > MAX_HOUR_DIGITS || i == end || text.charAt(i) != ':') {
+            return INVALID;
+        }
+
+        // minutes
+        int minutesStart = ++i;
+        int minutes = 0;
+        while (i < end && isDigit(text.charAt(i)) && i - minutesStart < 2) {
+            minutes = minutes * 10 + (text.charAt(i) - '0');
+            i++;
+        }
+        if (i == minutesStart || minutes > 59 || i == end || text.charAt(i) != ':') {
+            return INVALID;
+        }
+
+        // seconds
+        int secondsStart = ++i;
+        int seconds = 0;
+        while (i < end && isDigit(text.charAt(i)) && i - secondsStart < 2) {
+            seconds = seconds * 10 + (text.charAt(i) - '0');
+            i++;
+        }
+        if (i == secondsStart || seconds > 59) {
+            return INVALID;
+        }
+
+        long millis = ((hours * 60 + minutes) * 60 + seconds) * 1000;
+
+        if (i == end) {
+            return millis;
+        }
+        if (text.charAt(i) != '.') {
+            return INVALID;
+        }
+
+        long fraction = parseFraction(text, i + 1, end);
+        return fraction == INVALID ? INVALID : millis + fraction;
+    }
+
+    /**
+     * @return milliseconds of a decimal fraction (F+) or a rational one (F0/F1 with F0 &lt; F1)
+     */
+    private static long parseFraction(CharSequence text, int start, int end) {
+        int i = start;
+        long numerator = 0;
+        long scale = 1;
+
+        while (i < end && isDigit(text.charAt(i))) {
+            if (i - start < MAX_FRACTION_DIGITS) {
+                numerator = numerator * 10 + (text.charAt(i) - '0');
+                scale *= 10;
+            }
+            i++;
+        }
+        if (i == start) {
+            return INVALID;
+        }
+        if (i == end) {
+            return numerator * 1000 / scale;
+        }
+        if (text.charAt(i) != '/' || i - start > MAX_FRACTION_DIGITS) {
+            return INVALID;
+        }
+
+        int denominatorStart = ++i;
+        long denominator = 0;
+        while (i < end && isDigit(text.charAt(i)) && i - denominatorStart < MAX_FRACTION_DIGITS) {
+            denominator = denominator * 10 + (text.charAt(i) - '0');
+            i++;
+        }
+        if (i != end || i == denominatorStart || numerator >= denominator) {
+            return INVALID;
+        }
+        return numerator * 1000 / denominator;
+    }
+
+    /**
+     * Formats whole seconds as HH:MM:SS. Hours are not wrapped at 24 and take more digits when needed.
+     */
+    public static String format(long millis) {
+        StringBuilder sb = new StringBuilder(12);
+        format(millis, false, sb);
+
+        return sb.toString();
+    }
+
+    /**
+     * Appends the duration as HH:MM:SS, followed by ".mmm" if fraction is set and the duration is not a whole
+     * number of seconds. Negative durations are written as 00:00:00.
+     */
+    public static void format(long millis, boolean fraction, StringBuilder sb) {
+        if (millis < 0) {
+            millis = 0;
+        }
+
+        long seconds = millis / 1000;
+        long hours = seconds / 3600;
+        int minutes = (int) (seconds / 60 % 60);
+        int secs = (int) (seconds % 60);
+        int rest = (int) (millis % 1000);
+
+        if (hours < 10) {
+            sb.append('0');
+        }
+        sb.append(hours).append(':');
+        appendTwoDigits(sb, minutes);
+        sb.append(':');
+        appendTwoDigits(sb, secs);
+
+        if (fraction && rest > 0) {
+            sb.append('.');
+            sb.append((char) ('0' + rest / 100));
+            sb.append((char) ('0' + rest / 10 % 10));
+            sb.append((char) ('0' + rest % 10));
+        }
+    }
+
+    private static void appendTwoDigits(StringBuilder sb, int value) {
+        sb.append((char) ('0' + value / 10));
+        sb.append((char) ('0' + value % 10));
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
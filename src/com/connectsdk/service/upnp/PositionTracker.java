@@ -0,0 +1,381 @@
+package com.connectsdk.service.upnp;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.connectsdk.core.Log;
+import com.connectsdk.core.MediaInfo;
+import com.connectsdk.core.Util;
+import com.connectsdk.service.DLNAService;
+import com.connectsdk.service.capability.MediaControl.PlayStateListener;
+import com.connectsdk.service.capability.MediaControl.PlayStateStatus;
+import com.connectsdk.service.capability.MediaPlayer.MediaInfoListener;
+import com.connectsdk.service.capability.listeners.ResponseListener;
+import com.connectsdk.service.command.ServiceCommandError;
+import com.connectsdk.service.command.ServiceSubscription;
+import com.connectsdk.service.upnp.DLNAResponseParser.PositionInfo;
+
+/**
+ * Tracks the playback position of a DLNA renderer for progress displays. Play state and track changes come from the
+ * LastChange events of the renderer. GetPositionInfo is only polled while playing, and less often the better the
+ * reported position matches the local estimate. Between polls the position is interpolated, listeners get an update
+ * every update interval while playing and once on every change otherwise.
+ *
+ * Renderers that don't send events are covered as well: the play state is queried when the position stops
+ * advancing, and at the maximum poll interval while not playing.
+ */
+public class PositionTracker {
+
+    public interface PositionTrackerListener {
+        /**
+         * @param position current position in milliseconds
+         * @param duration duration of the track in milliseconds, 0 if unknown
+         * @param playState current play state
+         */
+        void onPositionChanged(long position, long duration, PlayStateStatus playState);
+    }
+
+    /** Default interval (in milliseconds) of the updates sent to listeners while playing. */
+    public static final long DEFAULT_UPDATE_INTERVAL = 1000;
+    /** Interval (in milliseconds) of GetPositionInfo polls after a change, and while the estimate is off. */
+    public static final long MIN_POLL_INTERVAL = 1000;
+    /** Upper bound (in milliseconds) of the poll interval while the estimate holds. */
+    public static final long MAX_POLL_INTERVAL = 16000;
+
+    // deviation (in milliseconds) beyond the reported second up to which a polled position confirms the estimate
+    static final long MAX_DRIFT = 500;
+
+    private final DLNAService service;
+    private final List<PositionTrackerListener> listeners = new CopyOnWriteArrayList<PositionTrackerListener>();
+
+    private long updateInterval = DEFAULT_UPDATE_INTERVAL;
+
+    private ServiceSubscription<PlayStateListener> playStateSubscription;
+    private ServiceSubscription<MediaInfoListener> mediaInfoSubscription;
+    private ScheduledFuture<?> nextTick;
+    private boolean running;
+    private boolean eventsReceived;
+    private boolean polling;
+
+    private PlayStateStatus playState = PlayStateStatus.Unknown;
+    private long position;
+    private long positionTime;
+    private long duration;
+    private long pollInterval = MIN_POLL_INTERVAL;
+    private long nextPoll;
+
+    private final PlayStateListener playStateListener = new PlayStateListener() {
+
+        @Override
+        public void onSuccess(PlayStateStatus status) {
+            onPlayState(status, true);
+        }
+
+        @Override
+        public void onError(ServiceCommandError error) {
+            Log.w(Util.T, "Play state subscription failed: {}", error);
+        }
+    };
+
+    private final MediaInfoListener mediaInfoListener = new MediaInfoListener() {
+
+        @Override
+        public void onSuccess(MediaInfo info) {
+            synchronized (PositionTracker.this) {
+                eventsReceived = true;
+                pollInterval = MIN_POLL_INTERVAL;
+            }
+            poll();
+        }
+
+        @Override
+        public void onError(ServiceCommandError error) {
+            Log.w(Util.T, "Media info subscription failed: {}", error);
+        }
+    };
+
+    private final Runnable tick = new Runnable() {
+
+        @Override
+        public void run() {
+            onTick();
+        }
+    };
+
+    public PositionTracker(DLNAService service) {
+        this.service = service;
+    }
+
+    public void addListener(PositionTrackerListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(PositionTrackerListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @param updateInterval interval (in milliseconds) of the updates sent to listeners while playing
+     */
+    public synchronized void setUpdateInterval(long updateInterval) {
+        this.updateInterval = updateInterval;
+    }
+
+    /** Subscribes to the events of the renderer and starts tracking. */
+    public void start() {
+        synchronized (this) {
+            if (running) {
+                return;
+            }
+
+            running = true;
+            eventsReceived = false;
+            pollInterval = MIN_POLL_INTERVAL;
+
+            scheduleTick();
+        }
+
+        playStateSubscription = service.subscribePlayState(playStateListener);
+        mediaInfoSubscription = service.subscribeMediaInfo(mediaInfoListener);
+
+        queryPlayState();
+        poll();
+    }
+
+    /** Stops tracking and cancels the subscriptions. */
+    public void stop() {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+
+            running = false;
+            cancelTick();
+        }
+
+        if (playStateSubscription != null) {
+            playStateSubscription.unsubscribe();
+            playStateSubscription = null;
+        }
+        if (mediaInfoSubscription != null) {
+            mediaInfoSubscription.unsubscribe();
+            mediaInfoSubscription = null;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    /** @return the estimated position in milliseconds */
+    public synchronized long getPosition() {
+        return estimatePosition(System.nanoTime());
+    }
+
+    /** @return the duration of the current track in milliseconds, 0 if unknown */
+    public synchronized long getDuration() {
+        return duration;
+    }
+
+    public synchronized PlayStateStatus getPlayState() {
+        return playState;
+    }
+
+    private void onPlayState(PlayStateStatus status, boolean event) {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+
+            if (event) {
+                eventsReceived = true;
+            }
+
+            if (status == playState) {
+                return;
+            }
+
+            // freeze the estimate at the moment of the change
+            long now = System.nanoTime();
+            position = estimatePosition(now);
+            positionTime = now;
+            playState = status;
+            pollInterval = MIN_POLL_INTERVAL;
+
+            cancelTick();
+            scheduleTick();
+        }
+
+        // a paused or stopped position is read once, playing positions are polled by the tick; listeners are
+        // notified with the polled position
+        poll();
+    }
+
+    private void onTick() {
+        boolean poll;
+        boolean queryPlayState = false;
+
+        synchronized (this) {
+            nextTick = null;
+
+            if (!running) {
+                return;
+            }
+
+            long now = System.nanoTime();
+
+            if (playState == PlayStateStatus.Playing) {
+                poll = now - nextPoll >= 0;
+            } else {
+                // nothing moves until the play state changes, which only needs to be asked for without events
+                poll = false;
+                queryPlayState = !eventsReceived;
+            }
+
+            scheduleTick();
+        }
+
+        if (poll) {
+            poll();
+        }
+        if (queryPlayState) {
+            queryPlayState();
+        }
+        if (getPlayState() == PlayStateStatus.Playing) {
+            notifyListeners();
+        }
+    }
+
+    private void scheduleTick() {
+        long delay = playState == PlayStateStatus.Playing ? updateInterval : MAX_POLL_INTERVAL;
+
+        nextTick = Util.runInBackground(tick, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelTick() {
+        if (nextTick != null) {
+            nextTick.cancel(false);
+            nextTick = null;
+        }
+    }
+
+    private void queryPlayState() {
+        service.getPlayState(new PlayStateListener() {
+
+            @Override
+            public void onSuccess(PlayStateStatus status) {
+                onPlayState(status, false);
+            }
+
+            @Override
+            public void onError(ServiceCommandError error) {
+                Log.w(Util.T, "Failed to get play state: {}", error);
+            }
+        });
+    }
+
+    private void poll() {
+        synchronized (this) {
+            if (!running || polling) {
+                return;
+            }
+
+            polling = true;
+        }
+
+        service.getPositionInfo(new ResponseListener<PositionInfo>() {
+
+            @Override
+            public void onSuccess(PositionInfo info) {
+                if (onPositionInfo(info)) {
+                    queryPlayState();
+                }
+                notifyListeners();
+            }
+
+            @Override
+            public void onError(ServiceCommandError error) {
+                synchronized (PositionTracker.this) {
+                    polling = false;
+                    pollInterval = Math.min(pollInterval * 2, MAX_POLL_INTERVAL);
+                    nextPoll = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pollInterval);
+                }
+            }
+        });
+    }
+
+    /**
+     * Takes over a polled position and adapts the poll interval to how well it matched the estimate.
+     *
+     * @return true if playback seems to have stopped without an event
+     */
+    private synchronized boolean onPositionInfo(PositionInfo info) {
+        polling = false;
+
+        long now = System.nanoTime();
+        long polledDuration = DLNATimeFormat.parse(info.getTrackDuration());
+        long polledPosition = DLNATimeFormat.parse(info.getRelTime());
+        boolean stalled = false;
+
+        if (polledDuration != DLNATimeFormat.INVALID) {
+            duration = polledDuration;
+        }
+
+        if (polledPosition != DLNATimeFormat.INVALID) {
+            long estimate = estimatePosition(now);
+            // positions are reported in whole seconds, any estimate within that second is right
+            boolean matches = estimate >= polledPosition - MAX_DRIFT && estimate < polledPosition + 1000 + MAX_DRIFT;
+
+            if (playState == PlayStateStatus.Playing) {
+                if (matches) {
+                    pollInterval = Math.min(pollInterval * 2, MAX_POLL_INTERVAL);
+                } else {
+                    pollInterval = MIN_POLL_INTERVAL;
+                    stalled = polledPosition == position && now - positionTime >= TimeUnit.MILLISECONDS.toNanos(
+                            MIN_POLL_INTERVAL);
+                }
+            }
+
+            // keep a matching estimate, it is finer than the report and doesn't jump back
+            if (!matches || estimate < polledPosition || estimate >= polledPosition + 1000) {
+                position = polledPosition;
+                positionTime = now;
+            }
+        }
+
+        nextPoll = now + TimeUnit.MILLISECONDS.toNanos(pollInterval);
+        return stalled;
+    }
+
+    private long estimatePosition(long now) {
+        if (playState != PlayStateStatus.Playing) {
+            return position;
+        }
+
+        long estimate = position + TimeUnit.NANOSECONDS.toMillis(now - positionTime);
+
+        return duration > 0 ? Math.min(estimate, duration) : estimate;
+    }
+
+    private void notifyListeners() {
+        long currentPosition;
+        long currentDuration;
+        PlayStateStatus currentPlayState;
+
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+
+            currentPosition = estimatePosition(System.nanoTime());
+            currentDuration = duration;
+            currentPlayState = playState;
+        }
+
+        for (PositionTrackerListener listener : listeners) {
+            listener.onPositionChanged(currentPosition, currentDuration, currentPlayState);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.connectsdk.service.webos;
+
+import java.util.Arrays;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Message received on a webOS socket. Decoding only locates the top-level members of the envelope (type, id, payload,
+ * ...); a member value is parsed when it is first requested, so high-rate subscription events are not turned into
+ * JSON trees that nobody reads.
+ */
+public class WebOSTVMessage {
+    private static final int MAX_MEMBERS = 8;
+
+    private final String data;
+
+    private String[] keys = new String[MAX_MEMBERS];
+    private int[] starts = new int[MAX_MEMBERS];
+    private int[] ends = new int[MAX_MEMBERS];
+    private Object[] values = new Object[MAX_MEMBERS];
+    private int size;
+
+    private JSONObject json;
+
+    private WebOSTVMessage(String data) {
+        this.data = data;
+    }
+
+    /**
+     * Locates the members of a message without parsing their values.
+     *
+     * @throws JSONException if the message is not a JSON object
+     */
+    public static WebOSTVMessage decode(String data) throws JSONException {
+        WebOSTVMessage message = new WebOSTVMessage(data);
+        message.scan();
+
+        return message;
+    }
+
+    /** @return the message type, or an empty string */
+    public String getType() {
+        return optString("type");
+    }
+
+    /**
+     * @return the numeric request id of the message, or null if there is none. Ids may be sent as number or string.
+     */
+    public Integer getRequestId() {
+        int index = indexOf("id");
+
+        if (index < 0) {
+            return null;
+        }
+
+        int start = starts[index];
+        int end = ends[index];
+
+        if (data.charAt(start) == '"') {
+            start++;
+            end--;
+        }
+
+        return parseInt(data, start, end);
+    }
+
+    /** @return the parsed payload, or null */
+    public Object getPayload() {
+        return opt("payload");
+    }
+
+    /** @return the payload as JSON text, or null */
+    public String getRawPayload() {
+        int index = indexOf("payload");
+
+        return index < 0 ? null : data.substring(starts[index], ends[index]);
+    }
+
+    public boolean has(String key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @return the member value like JSONObject.opt, or null
+     */
+    public Object opt(String key) {
+        int index = indexOf(key);
+
+        if (index < 0) {
+            return null;
+        }
+
+        if (values[index] == null) {
+            String text = data.substring(starts[index], ends[index]);
+
+            try {
+                values[index] = new JSONTokener(text).nextValue();
+            } catch (JSONException e) {
+                return null;
+            }
+        }
+        return values[index];
+    }
+
+    /**
+     * @return the member value as string like JSONObject.optString, or an empty string
+     */
+    public String optString(String key) {
+        int index = indexOf(key);
+
+        if (index < 0) {
+            return "";
+        }
+
+        int start = starts[index];
+        int end = ends[index];
+
+        if (data.charAt(start) != '"') {
+            Object value = opt(key);
+            return value != null ? value.toString() : "";
+        }
+
+        // plain strings can be cut out directly, only escaped ones need the tokenizer
+        int escape = data.indexOf('\\', start + 1);
+
+        if (escape < 0 || escape >= end) {
+            return data.substring(start + 1, end - 1);
+        }
+
+        Object value = opt(key);
+        return value != null ? value.toString() : "";
+    }
+
+    /** @return the whole message as JSONObject, parsed on first use */
+    public JSONObject toJSONObject() throws JSONException {
+        if (json == null) {
+            json = new JSONObject(data);
+        }
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return data;
+    }
+
+    private int indexOf(String key) {
+        for (int i = 0; i < size; i++) {
+            if (keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void scan() throws JSONException {
+        int i = skipWhitespace(0);
+
+        if (i >= data.length() || data.charAt(i) != '{') {
+            throw new JSONException("A JSONObject text must begin with '{'");
+        }
+
+        i = skipWhitespace(i + 1);
+
+        if (i < data.length() && data.charAt(i) == '}') {
+            return;
+        }
+
+        while (true) {
+            if (i >= data.length() || data.charAt(i) != '"') {
+                throw new JSONException("Expected a key at " + i);
+            }
+
+            int keyEnd = skipString(i);
+            String key = data.substring(i + 1, keyEnd - 1);
+
+            if (key.indexOf('\\') >= 0) {
+                key = new JSONTokener(data.substring(i, keyEnd)).nextValue().toString();
+            }
+
+            i = skipWhitespace(keyEnd);
+
+            if (i >= data.length() || data.charAt(i) != ':') {
+                throw new JSONException("Expected a ':' after a key at " + i);
+            }
+
+            int valueStart = skipWhitespace(i + 1);
+            int valueEnd = skipValue(valueStart);
+
+            add(key, valueStart, valueEnd);
+
+            i = skipWhitespace(valueEnd);
+
+            if (i >= data.length()) {
+                throw new JSONException("Unterminated message");
+            }
+
+            char c = data.charAt(i);
+
+            if (c == '}') {
+                return;
+            } else if (c != ',') {
+                throw new JSONException("Expected a ',' or '}' at " + i);
+            }
+
+            i = skipWhitespace(i + 1);
+        }
+    }
+
+    private void add(String key, int start, int end) {
+        if (size == keys.length) {
+            int capacity = size * 2;
+
+            keys = Arrays.copyOf(keys, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        keys[size] = key;
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    private int skipWhitespace(int i) {
+        while (i < data.length() && data.charAt(i) <= ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    /** @return the index after the closing quote of the string starting at i */
+    private int skipString(int i) throws JSONException {
+        for (i = i + 1; i < data.length(); i++) {
+            char c = data.charAt(i);
+
+            if (c == '\\') {
+                i++;
+            } else if (c == '"') {
+                return i + 1;
+            }
+        }
+        throw new JSONException("Unterminated string");
+    }
+
+    /** @return the index after the value starting at i */
+    private int skipValue(int i) throws JSONException {
+        if (i >= data.length()) {
+            throw new JSONException("Missing value");
+        }
+
+        char c = data.charAt(i);
+
+        if (c == '"') {
+            return skipString(i);
+        }
+
+        if (c == '{' || c == '[') {
+            int depth = 0;
+
+            while (i < data.length()) {
+                c = data.charAt(i);
+
+                if (c == '"') {
+                    i = skipString(i);
+                    continue;
+                }
+
+                if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+
+                    if (depth == 0) {
+                        return i + 1;
+                    }
+                }
+                i++;
+            }
+            throw new JSONException("Unterminated value");
+        }
+
+        while (i < data.length()) {
+            c = data.charAt(i);
+
+            if (c == ',' || c == '}' || c == ']' || c <= ' ') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Parses a non-negative decimal int without throwing.
+     *
+     * @return the value, or null if the text is not a valid int
+     */
+    static Integer parseInt(CharSequence s, int start, int end) {
+        if (start >= end || end - start > 10) {
+            return null;
+        }
+
+        long value = 0;
+
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+
+            if (c < '0' || c > '9') {
+                return null;
+            }
+            value = value * 10 + (c - '0');
+        }
+
+        if (value > Integer.MAX_VALUE) {
+            return null;
+        }
+        return (int) value;
+    }
+}
@@ -22,22 +22,52 @@ package com.connectsdk.service.webos;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
 
 import org.java_websocket.WebSocket.READYSTATE;
 import org.java_websocket.client.WebSocketClient;
 import org.java_websocket.handshake.ServerHandshake;
 
 import com.connectsdk.core.Log;
+import com.connectsdk.core.Util;
 
 public class WebOSTVMouseSocketConnection {
     public interface WebOSTVMouseSocketListener {
         void onConnected();
     }
 
+    /** Default interval (in milliseconds) at which accumulated pointer motion is sent, about 60 frames per second. */
+    public static final int DEFAULT_FRAME_INTERVAL = 16;
+
     WebSocketClient ws;
     String socketPath;
     WebOSTVMouseSocketListener listener;
 
+    // Pointer motion is summed up and sent at most once per frame interval, so that high rate touchpad input does not
+    // turn into one frame per event. A move with a different drag state or any other input flushes it first.
+    private int frameInterval = DEFAULT_FRAME_INTERVAL;
+    private final StringBuilder frame = new StringBuilder(64);
+    private double moveDx;
+    private double moveDy;
+    private boolean moveDrag;
+    private boolean movePending;
+    private double scrollDx;
+    private double scrollDy;
+    private boolean scrollPending;
+    private long lastFlush;
+    private boolean flushScheduled;
+
+    private final Runnable flushTask = new Runnable() {
+
+        @Override
+        public void run() {
+            synchronized (WebOSTVMouseSocketConnection.this) {
+                flushScheduled = false;
+                flushMotion();
+            }
+        }
+    };
+
     public enum ButtonType {
         HOME,
         BACK,
@@ -48,13 +78,13 @@ public class WebOSTVMouseSocketConnection {
     }
 
     public WebOSTVMouseSocketConnection(String socketPath, WebOSTVMouseSocketListener listener) {
-        Log.d("PtrAndKeyboardFragment", "got socketPath: " + socketPath);
+        Log.d("PtrAndKeyboardFragment", "got socketPath: {}", socketPath);
 
         this.listener = listener;
 
         if (socketPath.startsWith("wss:")) {
             this.socketPath = socketPath.replace("wss:", "ws:").replace(":3001/", ":3000/"); // downgrade to plaintext
-            Log.d("PtrAndKeyboardFragment", "downgraded socketPath: " + this.socketPath);
+            Log.d("PtrAndKeyboardFragment", "downgraded socketPath: {}", this.socketPath);
         }
         else 
             this.socketPath = socketPath;
@@ -77,7 +107,7 @@ public class WebOSTVMouseSocketConnection {
 
             @Override
             public void onOpen(ServerHandshake arg0) {
-                Log.d("PtrAndKeyboardFragment", "connected to " + uri.toString());
+                Log.d("PtrAndKeyboardFragment", "connected to {}", uri);
                 if (listener != null) {
                     listener.onConnected();
                 }
@@ -108,14 +138,26 @@ public class WebOSTVMouseSocketConnection {
 
     public boolean isConnected() {
         if (ws == null) 
-            System.out.println("ws is null");
+            Log.d("PtrAndKeyboardFragment", "ws is null");
         else if (ws.getReadyState() != READYSTATE.OPEN) {
-            System.out.println("ws state is not ready");
+            Log.d("PtrAndKeyboardFragment", "ws state is not ready");
         }
         return (ws != null) && (ws.getReadyState() == READYSTATE.OPEN);
     }
 
-    public void click() {
+    /**
+     * Sets the interval at which accumulated pointer motion is sent.
+     *
+     * @param frameInterval interval in milliseconds, 0 sends every move and scroll right away
+     */
+    public synchronized void setFrameInterval(int frameInterval) {
+        this.frameInterval = frameInterval;
+        flushMotion();
+    }
+
+    public synchronized void click() {
+        flushMotion();
+
         if (isConnected()) {
             ws.send("type:click\n" + "\n");
         }
@@ -151,27 +193,139 @@ public class WebOSTVMouseSocketConnection {
         button(keyName);
     }
 
-    public void button(String keyName) {
+    public synchronized void button(String keyName) {
+        flushMotion();
+
         if (isConnected()) {
             ws.send("type:button\n" + "name:" + keyName + "\n" + "\n");
         }
     }
 
     public void move(double dx, double dy) {
-        if (isConnected()) {
-            ws.send("type:move\n" + "dx:" + dx + "\n" + "dy:" + dy + "\n" + "down:0\n" + "\n");
+        move(dx, dy, false);
+    }
+
+    public synchronized void move(double dx, double dy, boolean drag) {
+        if (movePending && moveDrag != drag) {
+            flushMotion();
         }
+
+        moveDx += dx;
+        moveDy += dy;
+        moveDrag = drag;
+        movePending = true;
+
+        scheduleFlush();
     }
 
-    public void move(double dx, double dy, boolean drag) {
-        if (isConnected()) {
-            ws.send("type:move\n" + "dx:" + dx + "\n" + "dy:" + dy + "\n" + "down:" + (drag ? 1 : 0) + "\n" + "\n");
+    public synchronized void scroll(double dx, double dy) {
+        scrollDx += dx;
+        scrollDy += dy;
+        scrollPending = true;
+
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled) {
+            return;
+        }
+
+        long wait = lastFlush + frameInterval - System.currentTimeMillis();
+
+        if (wait <= 0 && !hasBufferedData()) {
+            // idle pointer, send the first event without delay
+            flushMotion();
+            return;
+        }
+
+        flushScheduled = true;
+        Util.runInBackground(flushTask, Math.max(wait, 1), TimeUnit.MILLISECONDS);
+    }
+
+    private boolean hasBufferedData() {
+        return ws != null && ws.getReadyState() == READYSTATE.OPEN && ws.getConnection().hasBufferedData();
+    }
+
+    private void flushMotion() {
+        if (!movePending && !scrollPending) {
+            return;
+        }
+
+        if (hasBufferedData() && frameInterval > 0) {
+            // the TV is not keeping up, keep accumulating until the socket has drained
+            if (!flushScheduled) {
+                flushScheduled = true;
+                Util.runInBackground(flushTask, frameInterval, TimeUnit.MILLISECONDS);
+            }
+            return;
+        }
+
+        lastFlush = System.currentTimeMillis();
+
+        if (movePending) {
+            frame.setLength(0);
+            frame.append("type:move\ndx:");
+            appendDecimal(frame, moveDx);
+            frame.append("\ndy:");
+            appendDecimal(frame, moveDy);
+            frame.append("\ndown:").append(moveDrag ? 1 : 0).append("\n\n");
+
+            moveDx = 0;
+            moveDy = 0;
+            movePending = false;
+
+            send(frame);
+        }
+
+        if (scrollPending) {
+            frame.setLength(0);
+            frame.append("type:scroll\ndx:");
+            appendDecimal(frame, scrollDx);
+            frame.append("\ndy:");
+            appendDecimal(frame, scrollDy);
+            frame.append("\n\n");
+
+            scrollDx = 0;
+            scrollDy = 0;
+            scrollPending = false;
+
+            send(frame);
         }
     }
 
-    public void scroll(double dx, double dy) {
+    private void send(CharSequence message) {
         if (isConnected()) {
-            ws.send("type:scroll\n" + "dx:" + dx + "\n" + "dy:" + dy + "\n" + "\n");
+            ws.send(message.toString());
+        }
+    }
+
+    /**
+     * Appends the value with up to three decimals, without going through Double.toString.
+     */
+    static void appendDecimal(StringBuilder sb, double value) {
+        long scaled = Math.round(value * 1000);
+
+        if (scaled < 0) {
+            sb.append('-');
+            scaled = -scaled;
+        }
+
+        sb.append(scaled / 1000);
+
+        int fraction = (int) (scaled % 1000);
+
+        if (fraction != 0) {
+            sb.append('.');
+            sb.append((char) ('0' + fraction / 100));
+
+            if (fraction % 100 != 0) {
+                sb.append((char) ('0' + fraction / 10 % 10));
+
+                if (fraction % 10 != 0) {
+                    sb.append((char) ('0' + fraction % 10));
+                }
+            }
         }
     }
 }
@@ -0,0 +1,53 @@
+package com.connectsdk.service.webos;
+
+import java.nio.ByteBuffer;
+
+import org.java_websocket.framing.Framedata;
+
+/**
+ * Empty WebSocket ping frame. Implemented directly on Framedata since the ping frame classes of Java-WebSocket
+ * differ between versions.
+ */
+class WebOSTVPingFrame implements Framedata {
+
+    static final WebOSTVPingFrame INSTANCE = new WebOSTVPingFrame();
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    @Override
+    public boolean isFin() {
+        return true;
+    }
+
+    public boolean isRSV1() {
+        return false;
+    }
+
+    public boolean isRSV2() {
+        return false;
+    }
+
+    public boolean isRSV3() {
+        return false;
+    }
+
+    @Override
+    public boolean getTransfereMasked() {
+        return true;
+    }
+
+    @Override
+    public Opcode getOpcode() {
+        return Opcode.PING;
+    }
+
+    @Override
+    public ByteBuffer getPayloadData() {
+        return EMPTY.duplicate();
+    }
+
+    @Override
+    public void append(Framedata nextframe) {
+        throw new UnsupportedOperationException("ping frames are not fragmented");
+    }
+}
@@ -0,0 +1,198 @@
+package com.connectsdk.service.webos;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.connectsdk.core.Log;
+import com.connectsdk.core.Util;
+import com.connectsdk.service.WebOSTVService;
+import com.connectsdk.service.command.ServiceCommand;
+import com.connectsdk.service.command.ServiceCommandError;
+import com.connectsdk.service.command.URLServiceSubscription;
+
+/**
+ * Reconnects a webOS TV in the background after its socket was lost. Attempts are spaced by an exponential backoff
+ * with jitter, so that several TVs or clients coming back at once don't hit the network in lockstep. Registration
+ * reuses the stored client key, so no pairing prompt is shown.
+ *
+ * Subscriptions and requests that can be sent twice without side effects are held while reconnecting, as are
+ * commands sent in the meantime. They are replayed once the TV is registered again, or failed when the reconnect is
+ * given up or cancelled.
+ */
+public class WebOSTVReconnector {
+
+    /** Default delay (in milliseconds) before the first reconnect attempt. */
+    public static final long DEFAULT_INITIAL_DELAY = 1000;
+    /** Default upper bound (in milliseconds) of the delay between attempts. */
+    public static final long DEFAULT_MAX_DELAY = 60 * 1000;
+    /** Default number of attempts before the reconnect is given up. */
+    public static final int DEFAULT_MAX_ATTEMPTS = 8;
+
+    private final WebOSTVService service;
+    private final Random random = new Random();
+
+    private long initialDelay = DEFAULT_INITIAL_DELAY;
+    private long maxDelay = DEFAULT_MAX_DELAY;
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    private final List<ServiceCommand<?>> pending = new ArrayList<ServiceCommand<?>>();
+    private ScheduledFuture<?> nextAttempt;
+    private boolean active;
+    private int attempt;
+
+    public WebOSTVReconnector(WebOSTVService service) {
+        this.service = service;
+    }
+
+    /**
+     * @param initialDelay delay (in milliseconds) before the first attempt
+     * @param maxDelay upper bound (in milliseconds) of the delay between attempts
+     * @param maxAttempts number of attempts before the reconnect is given up
+     */
+    public synchronized void setBackoff(long initialDelay, long maxDelay, int maxAttempts) {
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+        this.maxAttempts = maxAttempts;
+    }
+
+    public synchronized boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Starts reconnecting, unless a reconnect is already in progress.
+     *
+     * @param commands subscriptions and requests taken over from the lost socket
+     */
+    public synchronized void start(List<ServiceCommand<?>> commands) {
+        pending.addAll(commands);
+
+        if (active) {
+            return;
+        }
+
+        active = true;
+        attempt = 0;
+
+        schedule();
+    }
+
+    /**
+     * Holds a command until the connection is back.
+     *
+     * @return false if no reconnect is in progress and the command was not taken
+     */
+    public synchronized boolean hold(ServiceCommand<?> command) {
+        if (!active) {
+            return false;
+        }
+
+        pending.add(command);
+        return true;
+    }
+
+    /** Drops a held subscription that was cancelled while reconnecting. */
+    public synchronized void remove(URLServiceSubscription<?> subscription) {
+        pending.remove(subscription);
+    }
+
+    /** Called when an attempt failed, schedules the next one or gives up. */
+    public void onAttemptFailed(ServiceCommandError error) {
+        synchronized (this) {
+            if (!active) {
+                return;
+            }
+
+            attempt++;
+
+            if (attempt < maxAttempts) {
+                schedule();
+                return;
+            }
+        }
+
+        Log.w(Util.T, "Giving up reconnecting to {}", service.getServiceDescription().getIpAddress());
+        cancel(error != null ? error : new ServiceCommandError(0, "connection lost", null));
+    }
+
+    /** Called once the TV is registered again, replays the held commands. */
+    public void onConnected() {
+        List<ServiceCommand<?>> commands;
+
+        synchronized (this) {
+            if (!active) {
+                return;
+            }
+
+            active = false;
+            commands = new ArrayList<ServiceCommand<?>>(pending);
+            pending.clear();
+        }
+
+        Log.d(Util.T, "Reconnected after {} attempts, replaying {} commands", attempt + 1, commands.size());
+
+        for (ServiceCommand<?> command : commands) {
+            // request ids are only unique per socket
+            command.setRequestId(-1);
+            service.sendCommand(command);
+        }
+    }
+
+    /** Stops reconnecting and fails the held commands. */
+    public void cancel(ServiceCommandError error) {
+        List<ServiceCommand<?>> commands;
+
+        synchronized (this) {
+            if (nextAttempt != null) {
+                nextAttempt.cancel(false);
+                nextAttempt = null;
+            }
+
+            active = false;
+            commands = new ArrayList<ServiceCommand<?>>(pending);
+            pending.clear();
+        }
+
+        for (ServiceCommand<?> command : commands) {
+            Util.postError(command.getResponseListener(), error);
+        }
+    }
+
+    private void schedule() {
+        long delay = getDelay(attempt);
+
+        Log.d(Util.T, "Reconnecting in {} ms", delay);
+
+        nextAttempt = Util.runInBackground(new Runnable() {
+
+            @Override
+            public void run() {
+                synchronized (WebOSTVReconnector.this) {
+                    nextAttempt = null;
+
+                    if (!active) {
+                        return;
+                    }
+                }
+                service.connect();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the delay before the given attempt: half of the exponential backoff is fixed, the other half random
+     */
+    long getDelay(int attempt) {
+        long backoff = initialDelay << Math.min(attempt, 30);
+
+        if (backoff <= 0 || backoff > maxDelay) {
+            backoff = maxDelay;
+        }
+
+        long half = backoff / 2;
+        return half + (long) (random.nextDouble() * (backoff - half));
+    }
+}
@@ -5,27 +5,43 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.security.KeyException;
 import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSocket;
 import javax.net.ssl.X509TrustManager;
 import javax.xml.bind.DatatypeConverter;
 
 import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
 //2016-01-01: Moved from 1.3.0 to 1.3.1-snapshot
 //import org.java_websocket.client.DefaultSSLWebSocketClientFactory;
 import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.framing.Framedata;
 import org.java_websocket.handshake.ServerHandshake;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -66,6 +82,26 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
     int nextRequestId = 1;
 
     TrustManager customTrustManager;
+    SSLSocket sslSocket;
+
+    // Session timeout (in seconds) of cached TLS sessions
+    static final int SSL_SESSION_TIMEOUT = 24 * 60 * 60;
+
+    // One SSLContext per service, reused while the pinned certificate stays the same. Its client session cache lets
+    // reconnects resume the previous TLS session instead of doing a full handshake.
+    private static final Map<WebOSTVService, CachedSSLContext> sslContexts = new WeakHashMap<WebOSTVService, CachedSSLContext>();
+
+    private static class CachedSSLContext {
+        final X509Certificate pinnedCertificate;
+        final SSLContext sslContext;
+        final TrustManager trustManager;
+
+        CachedSSLContext(X509Certificate pinnedCertificate, SSLContext sslContext, TrustManager trustManager) {
+            this.pinnedCertificate = pinnedCertificate;
+            this.sslContext = sslContext;
+            this.trustManager = trustManager;
+        }
+    }
     State state = State.INITIAL;
 
     JSONObject manifest;
@@ -76,8 +112,55 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
     LinkedHashSet<ServiceCommand<ResponseListener<Object>>> commandQueue = new LinkedHashSet<ServiceCommand<ResponseListener<Object>>>();
 
     private HashMap<Integer, ServiceCommand<? extends Object>> requests = new HashMap<Integer,ServiceCommand<? extends Object>>();
+
+    // Subscriptions shared between listeners of the same URI and payload
+    private final WebOSTVSubscriptionRegistry subscriptions = new WebOSTVSubscriptionRegistry();
+
+    // Maximum number of messages written as one buffer before checking the socket buffer again
+    static final int MAX_BATCH_SIZE = 32;
+    // Delay (in milliseconds) before retrying a flush while the socket still has unwritten data
+    static final int FLUSH_RETRY_DELAY = 10;
+
+    // Outgoing messages, written by a single flush task so that a burst of commands goes out in one socket write
+    private final Queue<String> outbox = new ConcurrentLinkedQueue<String>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    private final Runnable flushTask = new Runnable() {
+
+        @Override
+        public void run() {
+            flushOutbox();
+        }
+    };
     
     boolean mConnectSucceeded = false;
+    // set while the connection is closed on purpose, any other close is a lost connection
+    private volatile boolean closeRequested;
+
+    /** Default interval (in milliseconds) of the heartbeat. */
+    public static final long DEFAULT_HEARTBEAT_INTERVAL = 5000;
+    /** Default number of heartbeat intervals without any data from the TV after which the connection is dropped. */
+    public static final int DEFAULT_HEARTBEAT_MISSES = 2;
+
+    // Heartbeat: if nothing arrives for an interval, the TV is pinged; a connection that stays silent for more than
+    // the allowed number of intervals is considered dead. The checks run on the shared scheduler of Util.
+    private long heartbeatInterval = DEFAULT_HEARTBEAT_INTERVAL;
+    private int heartbeatMisses = DEFAULT_HEARTBEAT_MISSES;
+    private volatile long lastReceived;
+    private int missedHeartbeats;
+    private ScheduledFuture<?> heartbeat;
+    private volatile boolean heartbeatTimedOut;
+
+    private final Runnable heartbeatTask = new Runnable() {
+
+        @Override
+        public void run() {
+            checkHeartbeat();
+        }
+    };
+
+    // Commands that may be resent on a new connection, offered to the listener while the connection is lost
+    private List<ServiceCommand<?>> recoverableCommands;
     
     public WebOSTVServiceSocketClient(WebOSTVService service, URI uri) {
         super(uri);
@@ -134,6 +217,8 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
     }
 
     public void disconnectWithError(ServiceCommandError error) {
+        closeRequested = true;
+        stopHeartbeat();
         this.close();
 
         state = State.INITIAL;
@@ -183,7 +268,9 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 
     @Override
     public void onMessage(String data) {
-        Log.d(Util.T, "webOS Socket [IN] : " + data);
+        lastReceived = System.nanoTime();
+
+        Log.d(Util.T, "webOS Socket [IN] : {}", data);
 
         this.handleMessage(data);
     }
@@ -191,7 +278,20 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
     @Override
     public void onClose(int code, String reason, boolean remote) {
         System.out.println("onClose: " + code + ": " + reason);
-        this.handleConnectionLost(true, null);
+
+        if (heartbeatTimedOut) {
+            this.handleConnectionLost(false, new IOException("heartbeat timeout"));
+        } else if (!closeRequested && (remote || code != CloseFrame.NORMAL)) {
+            // a TV going to standby closes the connection itself, with a close frame (1001) or without (1006)
+            this.handleConnectionLost(false, new IOException("connection closed: " + code + " " + reason));
+        } else {
+            this.handleConnectionLost(true, null);
+        }
+    }
+
+    @Override
+    public void onWebsocketPong(WebSocket conn, Framedata f) {
+        lastReceived = System.nanoTime();
     }
 
     @Override
@@ -219,16 +319,14 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 
     protected void handleMessage(String data) {
         try {
-            JSONObject obj = new JSONObject(data);
-
-            handleMessage(obj);
+            handleMessage(WebOSTVMessage.decode(data));
         } catch (JSONException e) {
             e.printStackTrace();
         }
     }
 
     @SuppressWarnings("unchecked")
-    protected void handleMessage(JSONObject message) {
+    protected void handleMessage(WebOSTVMessage message) {
         Boolean shouldProcess = true;
 
         if (mListener != null) {
@@ -239,16 +337,17 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
             return;
         }
 
-        String type = message.optString("type");
-        Object payload = message.opt("payload");
+        String type = message.getType();
 
-        String strId = message.optString("id");
-        Integer id = null;
-        ServiceCommand<ResponseListener<Object>> request = null;
+        if (type.length() == 0) {
+            return;
+        }
 
-        if (isInteger(strId)) {
-            id = Integer.valueOf(strId);
+        // the payload is only parsed by the branches that use it
+        Integer id = message.getRequestId();
+        ServiceCommand<ResponseListener<Object>> request = null;
 
+        if (id != null) {
             try {
                 request = (ServiceCommand<ResponseListener<Object>>) requests.get(id);
             } catch (ClassCastException ex) {
@@ -256,18 +355,15 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
             }
         }
 
-        if (type.length() == 0) {
-            return;
-        }
-
         if ("response".equals(type)) {
             if (request != null) {
                 // Log.d(Util.T, "Found requests need to handle response");
+                Object payload = message.getPayload();
+
                 if (payload != null) {
-                    Util.postSuccess(request.getResponseListener(), payload);
+                    postSuccess(request, payload);
                 } else {
-                    Util.postError(request.getResponseListener(),
-                            new ServiceCommandError(-1, "JSON parse error", null));
+                    postError(request, new ServiceCommandError(-1, "JSON parse error", null));
                 }
 
                 if (!(request instanceof URLServiceSubscription)) {
@@ -276,9 +372,11 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
                     }
                 }
             } else {
-                System.err.println("no matching request id: " + strId + ", payload: " + payload.toString());
+                Log.w(Util.T, "no matching request id for message {}", message);
             }
         } else if ("registered".equals(type)) {
+            Object payload = message.getPayload();
+
             if (!(mService.getServiceConfig() instanceof WebOSTVServiceConfig)) {
                 mService.setServiceConfig(new WebOSTVServiceConfig(mService.getServiceConfig().getServiceUUID()));
             }
@@ -289,8 +387,7 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 
                 // Track SSL certificate
                 // Not the prettiest way to get it, but we don't have direct access to the SSLEngine
-                ((WebOSTVServiceConfig) mService.getServiceConfig())
-                        .setServerCertificate(customTrustManager.getLastCheckedCertificate());
+                ((WebOSTVServiceConfig) mService.getServiceConfig()).setServerCertificate(getPeerCertificate());
 
                 handleRegistered();
 
@@ -306,6 +403,7 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 
             int errorCode = -1;
             String errorDesc = null;
+            Object payload = message.getPayload();
 
             try {
                 String[] parts = error.split(" ", 2);
@@ -316,15 +414,14 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
             }
 
             if (payload != null) {
-                Log.d(Util.T, "Error Payload: " + payload.toString());
+                Log.d(Util.T, "Error Payload: {}", payload);
             }
 
             if (message.has("id")) {
-                Log.d(Util.T, "Error Desc: " + errorDesc);
+                Log.d(Util.T, "Error Desc: {}", errorDesc);
 
                 if (request != null) {
-                    Util.postError(request.getResponseListener(),
-                            new ServiceCommandError(errorCode, errorDesc, payload));
+                    postError(request, new ServiceCommandError(errorCode, errorDesc, payload));
 
                     if (!(request instanceof URLServiceSubscription)) {
                         requests.remove(id);
@@ -333,7 +430,7 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
                 }
             }
         } else if ("hello".equals(type)) {
-            JSONObject jsonObj = (JSONObject) payload;
+            JSONObject jsonObj = (JSONObject) message.getPayload();
 
             if (mService.getServiceConfig().getServiceUUID() != null) {
                 if (!mService.getServiceConfig().getServiceUUID().equals(jsonObj.optString("deviceUUID"))) {
@@ -356,6 +453,34 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
         }
     }
 
+    private void postSuccess(ServiceCommand<?> request, Object payload) {
+        WebOSTVSubscriptionRegistry.SharedSubscription shared = subscriptions.get(request.getRequestId());
+
+        if (shared == null) {
+            Util.postSuccess(request.getResponseListener(), payload);
+            return;
+        }
+
+        shared.lastPayload = payload;
+
+        for (ResponseListener<Object> listener : shared.getResponseListeners()) {
+            Util.postSuccess(listener, payload);
+        }
+    }
+
+    private void postError(ServiceCommand<?> request, ServiceCommandError error) {
+        WebOSTVSubscriptionRegistry.SharedSubscription shared = subscriptions.get(request.getRequestId());
+
+        if (shared == null) {
+            Util.postError(request.getResponseListener(), error);
+            return;
+        }
+
+        for (ResponseListener<Object> listener : shared.getResponseListeners()) {
+            Util.postError(listener, error);
+        }
+    }
+
     private void helloTV() {
         Context context = DiscoveryManager.getInstance().getContext();
         
@@ -557,11 +682,13 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
     protected void handleRegistered() {
         state = State.REGISTERED;
 
+        startHeartbeat();
+
         if (!commandQueue.isEmpty()) {
             LinkedHashSet<ServiceCommand<ResponseListener<Object>>> tempHashSet = new LinkedHashSet<ServiceCommand<ResponseListener<Object>>>(
                     commandQueue);
             for (ServiceCommand<ResponseListener<Object>> command : tempHashSet) {
-                Log.d(Util.T, "executing queued command for " + command.getTarget());
+                Log.d(Util.T, "executing queued command for {}", command.getTarget());
 
                 sendCommandImmediately(command);
                 commandQueue.remove(command);
@@ -596,22 +723,112 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
             requestId = command.getRequestId();
         }
 
+        if (WebOSTVSubscriptionRegistry.isShareable(command)) {
+            WebOSTVSubscriptionRegistry.SharedSubscription shared = subscriptions.join((URLServiceSubscription<?>) command);
+
+            if (shared != null) {
+                // already subscribed on the TV, just hand out the latest state
+                Log.d(Util.T, "sharing subscription for {}", command.getTarget());
+
+                Object lastPayload = shared.lastPayload;
+                if (lastPayload != null) {
+                    Util.postSuccess(command.getResponseListener(), lastPayload);
+                }
+                return;
+            }
+        }
+
         requests.put(requestId, command);
 
         if (state == State.REGISTERED) {
             this.sendCommandImmediately(command);
         } else if (state == State.CONNECTING || state == State.DISCONNECTING) {
-            Log.d(Util.T, "queuing command for " + command.getTarget());
+            Log.d(Util.T, "queuing command for {}", command.getTarget());
             commandQueue.add((ServiceCommand<ResponseListener<Object>>) command);
         } else {
-            Log.d(Util.T, "queuing command and restarting socket for " + command.getTarget());
+            Log.d(Util.T, "queuing command and restarting socket for {}", command.getTarget());
             commandQueue.add((ServiceCommand<ResponseListener<Object>>) command);
             connect();
         }
     }
 
+    /**
+     * Sends a group of SSAP requests in one write batch. The listener is called once all of them have been answered,
+     * with the responses in the order of the commands, or with the first error. The listeners of the individual
+     * commands are still called.
+     *
+     * @param commands requests to send
+     * @param listener listener for the combined result
+     */
+    public void sendCommands(List<? extends ServiceCommand<?>> commands, ResponseListener<List<Object>> listener) {
+        if (commands.isEmpty()) {
+            Util.postSuccess(listener, new ArrayList<Object>());
+            return;
+        }
+
+        groupResponses(commands, listener);
+
+        for (ServiceCommand<?> command : commands) {
+            sendCommand(command);
+        }
+    }
+
+    /**
+     * Wraps the response listeners of the commands, so that the listener is told once about all of them: with the
+     * responses in the order of the commands, or with the first error. The commands may be sent later, e.g. once
+     * reconnected.
+     */
+    public static void groupResponses(List<? extends ServiceCommand<?>> commands,
+            final ResponseListener<List<Object>> listener) {
+        final Object[] results = new Object[commands.size()];
+        final AtomicInteger remaining = new AtomicInteger(commands.size());
+        final AtomicBoolean failed = new AtomicBoolean(false);
+
+        for (int i = 0; i < commands.size(); i++) {
+            final int index = i;
+            final ServiceCommand<?> command = commands.get(i);
+            final ResponseListener<Object> commandListener = command.getResponseListener();
+            final AtomicBoolean answered = new AtomicBoolean(false);
+
+            command.setResponseListener(new ResponseListener<Object>() {
+
+                @Override
+                public void onSuccess(Object response) {
+                    if (commandListener != null) {
+                        commandListener.onSuccess(response);
+                    }
+
+                    // subscriptions keep answering, only the first response counts
+                    if (answered.compareAndSet(false, true)) {
+                        results[index] = response;
+
+                        if (remaining.decrementAndGet() == 0 && !failed.get()) {
+                            Util.postSuccess(listener, Arrays.asList(results));
+                        }
+                    }
+                }
+
+                @Override
+                public void onError(ServiceCommandError error) {
+                    if (commandListener != null) {
+                        commandListener.onError(error);
+                    }
+
+                    if (answered.compareAndSet(false, true) && failed.compareAndSet(false, true)) {
+                        Util.postError(listener, error);
+                    }
+                }
+            });
+        }
+    }
+
     @Override
     public void unsubscribe(URLServiceSubscription<?> subscription) {
+        if (!subscriptions.leave(subscription)) {
+            // other listeners still use the subscription
+            return;
+        }
+
         int requestId = subscription.getRequestId();
 
         if (requests.get(requestId) != null) {
@@ -660,7 +877,7 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 
             this.sendMessage(headers, null);
         } else if (payloadType.equals("hello")) {
-            this.send(payload.toString());
+            enqueue(payload.toString());
         } else {
             try {
                 headers.put("type", command.getHttpMethod());
@@ -678,7 +895,8 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
     private void setSSLContext(SSLContext sslContext) {
         // setWebSocketFactory(new DefaultSSLWebSocketClientFactory(sslContext));
         try {
-            super.setSocket(sslContext.getSocketFactory().createSocket());
+            sslSocket = (SSLSocket) sslContext.getSocketFactory().createSocket();
+            super.setSocket(sslSocket);
         } catch (IOException e) {
             Log.e("SSL Setup", "failed to setup ssl socket", e);
         }
@@ -686,22 +904,64 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
     }
 
     protected void setupSSL() {
+        if (!(mService.getServiceConfig() instanceof WebOSTVServiceConfig)) {
+            mService.setServiceConfig(new WebOSTVServiceConfig(mService.getServiceConfig().getServiceUUID()));
+        }
+
+        X509Certificate pinnedCertificate = ((WebOSTVServiceConfig) mService.getServiceConfig()).getServerCertificate();
+
         try {
-            SSLContext sslContext = SSLContext.getInstance("TLS");
-            customTrustManager = new TrustManager();
-            sslContext.init(null, new TrustManager[] { customTrustManager }, null);
-            setSSLContext(sslContext);
+            CachedSSLContext cached = getSSLContext(mService, pinnedCertificate);
 
-            if (!(mService.getServiceConfig() instanceof WebOSTVServiceConfig)) {
-                mService.setServiceConfig(new WebOSTVServiceConfig(mService.getServiceConfig().getServiceUUID()));
-            }
-            customTrustManager.setExpectedCertificate(
-                    ((WebOSTVServiceConfig) mService.getServiceConfig()).getServerCertificate());
+            customTrustManager = cached.trustManager;
+            setSSLContext(cached.sslContext);
         } catch (KeyException e) {
         } catch (NoSuchAlgorithmException e) {
         }
     }
 
+    private static CachedSSLContext getSSLContext(WebOSTVService service, X509Certificate pinnedCertificate)
+            throws KeyException, NoSuchAlgorithmException {
+        synchronized (sslContexts) {
+            CachedSSLContext cached = sslContexts.get(service);
+
+            if (cached != null && (cached.pinnedCertificate == null ? pinnedCertificate == null
+                    : cached.pinnedCertificate.equals(pinnedCertificate))) {
+                return cached;
+            }
+
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            TrustManager trustManager = new TrustManager();
+            trustManager.setExpectedCertificate(pinnedCertificate);
+            sslContext.init(null, new TrustManager[] { trustManager }, null);
+            sslContext.getClientSessionContext().setSessionTimeout(SSL_SESSION_TIMEOUT);
+
+            cached = new CachedSSLContext(pinnedCertificate, sslContext, trustManager);
+            sslContexts.put(service, cached);
+
+            return cached;
+        }
+    }
+
+    /**
+     * @return the certificate presented by the TV. Taken from the TLS session, as the trust manager is not asked
+     *         again when a session is resumed.
+     */
+    X509Certificate getPeerCertificate() {
+        if (sslSocket != null) {
+            try {
+                Certificate[] chain = sslSocket.getSession().getPeerCertificates();
+
+                if (chain.length > 0 && chain[0] instanceof X509Certificate) {
+                    return (X509Certificate) chain[0];
+                }
+            } catch (SSLPeerUnverifiedException e) {
+                // fall back to the trust manager
+            }
+        }
+        return customTrustManager != null ? customTrustManager.getLastCheckedCertificate() : null;
+    }
+
     public boolean isConnected() {
         return this.getReadyState() == WebSocket.READYSTATE.OPEN;
     }
@@ -722,36 +982,231 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
         }
 
         if (isConnected()) {
-            String message = packet.toString();
-
-            Log.d(Util.T, "webOS Socket [OUT] : " + message);
-
-            this.send(message);
+            enqueue(packet.toString());
         } else {
             System.err.println("connection lost");
             handleConnectionLost(false, null);
         }
     }
 
-    @SuppressWarnings("unchecked")
+    private void enqueue(String message) {
+        outbox.add(message);
+
+        if (flushScheduled.compareAndSet(false, true)) {
+            Util.runInBackground(flushTask);
+        }
+    }
+
+    private void flushOutbox() {
+        while (true) {
+            if (isConnected() && getConnection().hasBufferedData()) {
+                // the previous batch has not reached the socket yet, don't pile up more frames behind it
+                Util.runInBackground(flushTask, FLUSH_RETRY_DELAY, TimeUnit.MILLISECONDS);
+                return;
+            }
+
+            List<ByteBuffer> frames = new ArrayList<ByteBuffer>();
+            int size = 0;
+            String message;
+
+            while (frames.size() < MAX_BATCH_SIZE && (message = outbox.poll()) != null) {
+                if (!isConnected()) {
+                    // pending requests are failed by handleConnectionLost
+                    outbox.clear();
+                    frames.clear();
+                    break;
+                }
+
+                Log.d(Util.T, "webOS Socket [OUT] : {}", message);
+
+                // client frames are masked, the draft puts each text message into a single frame
+                for (Framedata frame : getDraft().createFrames(message, true)) {
+                    ByteBuffer buffer = getDraft().createBinaryFrame(frame);
+                    size += buffer.remaining();
+                    frames.add(buffer);
+                }
+            }
+
+            if (!frames.isEmpty()) {
+                write(frames, size);
+            }
+
+            if (outbox.isEmpty()) {
+                flushScheduled.set(false);
+
+                // a message may have been queued after the last poll without scheduling a flush
+                if (outbox.isEmpty() || !flushScheduled.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands the encoded frames of a batch to the write thread as a single buffer. WebSocketClient.send() queues every
+     * frame separately and the write thread writes and flushes them one by one.
+     */
+    private void write(List<ByteBuffer> frames, int size) {
+        ByteBuffer batch = ByteBuffer.allocate(size);
+
+        for (ByteBuffer frame : frames) {
+            batch.put(frame);
+        }
+        batch.flip();
+
+        ((WebSocketImpl) getConnection()).outQueue.add(batch);
+    }
+
     private void handleConnectionLost(boolean cleanDisconnect, Exception ex) {
+        stopHeartbeat();
+
         ServiceCommandError error = null;
 
         if (ex != null || !cleanDisconnect) {
             error = new ServiceCommandError(0, "conneciton error", ex);
         }
 
+        // after an unexpected loss of a registered connection, subscriptions and queries can be taken over by the
+        // listener to resend them once reconnected; everything else fails right away
+        boolean recoverable = error != null && state == State.REGISTERED;
+        List<ServiceCommand<?>> failed = new ArrayList<ServiceCommand<?>>();
+        List<ServiceCommand<?>> recovered = new ArrayList<ServiceCommand<?>>();
+
+        for (ServiceCommand<? extends Object> request : requests.values()) {
+            if (request == null) {
+                continue;
+            }
+
+            if (!recoverable || !isReplayable(request)) {
+                failed.add(request);
+            } else if (!WebOSTVSubscriptionRegistry.isShareable(request)) {
+                recovered.add(request);
+            }
+        }
+
+        if (recoverable) {
+            recovered.addAll(0, subscriptions.getSubscriptions());
+        }
+
+        synchronized (this) {
+            recoverableCommands = recoverable ? recovered : null;
+        }
+
         if (mListener != null) {
             mListener.onCloseWithError(error);
         }
 
-        for(ServiceCommand<? extends Object> request : requests.values()){
-            if (request != null) {
+        for (ServiceCommand<?> request : failed) {
+            postError(request, new ServiceCommandError(0, "connection lost", null));
+        }
+
+        List<ServiceCommand<?>> unclaimed = takeRecoverableCommands();
+        if (unclaimed != null) {
+            for (ServiceCommand<?> request : unclaimed) {
                 Util.postError(request.getResponseListener(), new ServiceCommandError(0, "connection lost", null));
             }
         }
 
         clearRequests();
+        subscriptions.clear();
+    }
+
+    /**
+     * Hands over the subscriptions and requests that can be resent after the connection was lost. Only valid while
+     * the listener is notified with onCloseWithError; commands that are not taken are failed afterwards.
+     *
+     * @return the commands, or null if the connection cannot be recovered or they were taken already
+     */
+    public synchronized List<ServiceCommand<?>> takeRecoverableCommands() {
+        List<ServiceCommand<?>> commands = recoverableCommands;
+        recoverableCommands = null;
+
+        return commands;
+    }
+
+    /**
+     * @return true if the command can be sent again without side effects: subscriptions and requests that only
+     *         query state
+     */
+    static boolean isReplayable(ServiceCommand<?> command) {
+        if (WebOSTVSubscriptionRegistry.isShareable(command)) {
+            return true;
+        }
+
+        String target = command.getTarget();
+
+        if (target == null || !ServiceCommand.TYPE_REQ.equals(command.getHttpMethod())) {
+            return false;
+        }
+        return target.startsWith("get", target.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Configures the heartbeat, which detects connections that died without being closed, e.g. after the network
+     * changed. Takes effect with the next registration.
+     *
+     * @param interval interval (in milliseconds) of the heartbeat, 0 disables it
+     * @param misses number of intervals without any data from the TV after which the connection is dropped
+     */
+    public void setHeartbeat(long interval, int misses) {
+        this.heartbeatInterval = interval;
+        this.heartbeatMisses = misses;
+    }
+
+    private synchronized void startHeartbeat() {
+        if (heartbeatInterval <= 0 || heartbeat != null) {
+            return;
+        }
+
+        lastReceived = System.nanoTime();
+        missedHeartbeats = 0;
+        heartbeat = Util.runInBackground(heartbeatTask, heartbeatInterval, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void stopHeartbeat() {
+        if (heartbeat != null) {
+            heartbeat.cancel(false);
+            heartbeat = null;
+        }
+    }
+
+    private void checkHeartbeat() {
+        synchronized (this) {
+            if (heartbeat == null) {
+                return;
+            }
+            heartbeat = null;
+        }
+
+        if (!isConnected()) {
+            return;
+        }
+
+        long silence = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastReceived);
+
+        if (silence < heartbeatInterval) {
+            missedHeartbeats = 0;
+        } else if (++missedHeartbeats > heartbeatMisses) {
+            Log.w(Util.T, "No answer from TV for {} ms, dropping connection", silence);
+
+            heartbeatTimedOut = true;
+            getConnection().closeConnection(CloseFrame.ABNORMAL_CLOSE, "heartbeat timeout");
+            return;
+        } else {
+            // only ping an idle connection, any message from the TV proves it is alive
+            try {
+                getConnection().sendFrame(WebOSTVPingFrame.INSTANCE);
+            } catch (RuntimeException e) {
+                // closed in the meantime, handled by onClose
+                return;
+            }
+        }
+
+        synchronized (this) {
+            if (heartbeat == null && state == State.REGISTERED) {
+                heartbeat = Util.runInBackground(heartbeatTask, heartbeatInterval, TimeUnit.MILLISECONDS);
+            }
+        }
     }
 
     public void setServerCertificate(X509Certificate cert) {
@@ -813,13 +1268,29 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
     }
 
     public static boolean isInteger(String s) {
-        try {
-            Integer.parseInt(s);
-        } catch (NumberFormatException e) {
+        if (s == null || s.isEmpty()) {
+            return false;
+        }
+
+        // same result as Integer.parseInt succeeding, without the cost of the exception on the failing path
+        int start = s.charAt(0) == '-' || s.charAt(0) == '+' ? 1 : 0;
+        long limit = s.charAt(0) == '-' ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+        int length = s.length();
+
+        if (start == length || length - start > 10) {
             return false;
         }
-        // only got here if we didn't return false
-        return true;
+
+        long value = 0;
+        for (int i = start; i < length; i++) {
+            char c = s.charAt(i);
+
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value <= limit;
     }
 
     private static class TrustManager implements X509TrustManager {
@@ -840,7 +1311,7 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 
         @Override
         public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
-            Log.d(Util.T, "Expecting device cert " + (expectedCert != null ? expectedCert.getSubjectDN() : "(any)"));
+            Log.d(Util.T, "Expecting device cert {}", expectedCert != null ? expectedCert.getSubjectDN() : "(any)");
 
             if (chain != null && chain.length > 0) {
                 X509Certificate cert = chain[0];
@@ -851,7 +1322,7 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
                     byte[] certBytes = cert.getEncoded();
                     byte[] expectedCertBytes = expectedCert.getEncoded();
 
-                    Log.d(Util.T, "Device presented cert " + cert.getSubjectDN());
+                    Log.d(Util.T, "Device presented cert {}", cert.getSubjectDN());
 
                     if (!Arrays.equals(certBytes, expectedCertBytes)) {
                         throw new CertificateException("certificate does not match");
@@ -881,7 +1352,7 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 
         public void onRegistrationFailed(ServiceCommandError error);
 
-        public Boolean onReceiveMessage(JSONObject message);
+        public Boolean onReceiveMessage(WebOSTVMessage message);
 
     }
 
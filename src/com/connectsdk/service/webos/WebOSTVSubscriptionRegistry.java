@@ -0,0 +1,126 @@
+package com.connectsdk.service.webos;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.connectsdk.service.capability.listeners.ResponseListener;
+import com.connectsdk.service.command.ServiceCommand;
+import com.connectsdk.service.command.URLServiceSubscription;
+
+/**
+ * Lets webOS subscriptions to the same URI and payload share a single subscription on the TV. The first subscription
+ * is sent as usual; later ones only join it and get its events fanned out locally. The subscription on the TV is
+ * cancelled once the last member leaves.
+ */
+class WebOSTVSubscriptionRegistry {
+
+    static class SharedSubscription {
+        final String key;
+        final int requestId;
+        final List<URLServiceSubscription<?>> members = new CopyOnWriteArrayList<URLServiceSubscription<?>>();
+
+        // latest event, handed to members that join later
+        volatile Object lastPayload;
+
+        SharedSubscription(String key, int requestId) {
+            this.key = key;
+            this.requestId = requestId;
+        }
+
+        List<ResponseListener<Object>> getResponseListeners() {
+            List<ResponseListener<Object>> listeners = new ArrayList<ResponseListener<Object>>(members.size());
+
+            for (URLServiceSubscription<?> member : members) {
+                listeners.add(member.getResponseListener());
+            }
+            return listeners;
+        }
+    }
+
+    private final Map<String, SharedSubscription> byKey = new ConcurrentHashMap<String, SharedSubscription>();
+    private final Map<Integer, SharedSubscription> byRequestId = new ConcurrentHashMap<Integer, SharedSubscription>();
+
+    static boolean isShareable(ServiceCommand<?> command) {
+        return command instanceof URLServiceSubscription && ServiceCommand.TYPE_SUB.equals(command.getHttpMethod());
+    }
+
+    /**
+     * Registers the subscription. If an equal subscription already exists on the TV, the subscription takes over its
+     * request id.
+     *
+     * @return the existing subscription that was joined, or null if the subscription has to be sent to the TV
+     */
+    synchronized SharedSubscription join(URLServiceSubscription<?> subscription) {
+        String key = getKey(subscription);
+        SharedSubscription shared = byKey.get(key);
+
+        if (shared == null) {
+            shared = new SharedSubscription(key, subscription.getRequestId());
+            shared.members.add(subscription);
+
+            byKey.put(key, shared);
+            byRequestId.put(shared.requestId, shared);
+
+            return null;
+        }
+
+        if (!shared.members.contains(subscription)) {
+            shared.members.add(subscription);
+        }
+        subscription.setRequestId(shared.requestId);
+
+        return shared;
+    }
+
+    /**
+     * Removes the subscription from its shared subscription.
+     *
+     * @return true if no member is left and the subscription should be cancelled on the TV
+     */
+    synchronized boolean leave(URLServiceSubscription<?> subscription) {
+        SharedSubscription shared = byRequestId.get(subscription.getRequestId());
+
+        if (shared == null) {
+            return true;
+        }
+
+        shared.members.remove(subscription);
+
+        if (!shared.members.isEmpty()) {
+            return false;
+        }
+
+        byKey.remove(shared.key);
+        byRequestId.remove(shared.requestId);
+
+        return true;
+    }
+
+    /** @return all subscriptions, including the ones that joined a shared subscription */
+    synchronized List<URLServiceSubscription<?>> getSubscriptions() {
+        List<URLServiceSubscription<?>> all = new ArrayList<URLServiceSubscription<?>>();
+
+        for (SharedSubscription shared : byKey.values()) {
+            all.addAll(shared.members);
+        }
+        return all;
+    }
+
+    SharedSubscription get(int requestId) {
+        return byRequestId.get(requestId);
+    }
+
+    synchronized void clear() {
+        byKey.clear();
+        byRequestId.clear();
+    }
+
+    private static String getKey(ServiceCommand<?> command) {
+        Object payload = command.getPayload();
+
+        return command.getTarget() + "\n" + (payload != null ? payload.toString() : "");
+    }
+}